@@ -0,0 +1,233 @@
+package com.polarnick.indexedSearch;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates queries from file in batch: queries are grouped by shared words, so positions of every word
+ * are decoded once (see {@link PostingsCache}) and reused by all queries of batch. Groups are evaluated in parallel,
+ * results are written to output file as soon as they are found - one line per query:
+ * {@code number of query<TAB>status<TAB>count of matches<TAB>query<TAB>matches}
+ * (matches are separated with spaces, each of them is "file:from-to" or "file:from").
+ * Status is {@code INCORRECT} for query with syntax error and {@code ERROR} for query, that failed while evaluation
+ * (then the last column is the error instead of matches), so every query has its line.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class BatchSearcher {
+
+    // groups of queries with the same word are split in tasks of so many queries, so big groups are evaluated in parallel too
+    private static final int TASK_SIZE = 64;
+
+    private static final String INCORRECT_STATUS = "INCORRECT";
+    private static final String ERROR_STATUS = "ERROR";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.out.println("Usage arguments: indexFile queriesFile resultsFile [-jN] [-t N] [-b N] [-r N] [-m metricsFileName]");
+            System.out.println("Where 'queriesFile' - file with one query per line");
+            System.out.println("Where 'resultsFile' - file to write results in, in order of evaluation (each line starts with number of query)");
+            System.out.println("Where '-jN' - count of threads to evaluate queries (default: count of processors)");
+            System.out.println("Where '-t N', '-b N', '-r N' - limits of every query: time in milliseconds, budget of occurrences and count of matches");
+            System.out.println("Where '-m metricsFileName' - file to save metrics in (JSON if name ends with '.json', Prometheus text format otherwise)");
+            return;
+        }
+        int threadsCount = Runtime.getRuntime().availableProcessors();
+        long timeoutMillis = QueryContext.NO_LIMIT;
+        long occurrencesBudget = QueryContext.NO_LIMIT;
+        long maxResults = QueryContext.NO_LIMIT;
+        String metricsFilename = null;
+        for (int i = 3; i < args.length; i++) {
+            if (args[i].startsWith("-j")) {
+                threadsCount = Integer.parseInt(args[i].substring(2));
+            } else if (args[i].equals("-t") && i + 1 < args.length) {
+                timeoutMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-b") && i + 1 < args.length) {
+                occurrencesBudget = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-r") && i + 1 < args.length) {
+                maxResults = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-m") && i + 1 < args.length) {
+                metricsFilename = args[++i];
+            } else {
+                System.out.println("Unknown argument: '" + args[i] + "'");
+                return;
+            }
+        }
+
+        Index index;
+        try {
+            index = Index.loadFromFile(args[0]);
+        } catch (CorruptIndexException e) {
+            System.out.println("Error while interpreting file: " + e);
+            return;
+        }
+        List<String> queries = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(args[1]), StandardCharsets.UTF_8))) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                if (!line.isEmpty()) {
+                    queries.add(line);
+                }
+            }
+        }
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[2]), StandardCharsets.UTF_8))) {
+            new BatchSearcher(index, timeoutMillis, occurrencesBudget, maxResults).search(queries, out, threadsCount);
+        }
+        System.out.println("Results were saved to file: " + args[2]);
+        if (metricsFilename != null) {
+            Metrics.global().saveToFile(metricsFilename);
+            System.out.println("Metrics were saved to file: " + metricsFilename);
+        }
+    }
+
+    private final Index index;
+    private final long timeoutMillis;
+    private final long occurrencesBudget;
+    private final long maxResults;
+
+    public BatchSearcher(Index index, long timeoutMillis, long occurrencesBudget, long maxResults) {
+        this.index = index;
+        this.timeoutMillis = timeoutMillis;
+        this.occurrencesBudget = occurrencesBudget;
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Evaluates queries and writes their results to {@code out} in order of evaluation.
+     */
+    public void search(final List<String> queries, final Writer out, int threadsCount) throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        final PostingsCache postingsCache = new PostingsCache(index);
+        final Searcher searcher = new Searcher(index, timeoutMillis, occurrencesBudget, maxResults, postingsCache);
+
+        final List<Set<String>> wordsByQuery = new ArrayList<>(queries.size());
+        for (String query : queries) {
+            Set<String> words = new LinkedHashSet<>(searcher.getWords(query));
+            wordsByQuery.add(words);
+            for (String word : words) {
+                postingsCache.retain(word);
+            }
+        }
+        List<Integer> order = groupByWords(wordsByQuery);
+
+        final AtomicInteger queriesProcessed = new AtomicInteger(0);
+        final IOException[] writeException = new IOException[1];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int taskStart = 0; taskStart < order.size(); taskStart += TASK_SIZE) {
+            final List<Integer> taskQueries = order.subList(taskStart, Math.min(order.size(), taskStart + TASK_SIZE));
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int queryIndex : taskQueries) {
+                        String query = queries.get(queryIndex);
+                        StringBuilder line = new StringBuilder();
+                        line.append(queryIndex + 1).append('\t');
+                        int statusStart = line.length();
+                        try {
+                            Searcher.SearchResult result = searcher.search(query);
+                            line.append(result.getStatus()).append('\t').append(result.getMatches().size())
+                                    .append('\t').append(query).append('\t');
+                            result.appendMatches(line);
+                        } catch (IllegalArgumentException e) {
+                            line.setLength(statusStart);
+                            line.append(INCORRECT_STATUS).append("\t0\t").append(query).append('\t');
+                        } catch (RuntimeException e) {
+                            line.setLength(statusStart);
+                            line.append(ERROR_STATUS).append("\t0\t").append(query).append('\t').append(e);
+                        } finally {
+                            for (String word : wordsByQuery.get(queryIndex)) {
+                                postingsCache.release(word);
+                            }
+                        }
+                        synchronized (out) {
+                            try {
+                                out.append(line).append('\n');
+                            } catch (IOException e) {
+                                writeException[0] = e;
+                            }
+                        }
+                        int processed = queriesProcessed.incrementAndGet();
+                        if (processed % 1000 == 0) {
+                            synchronized (System.out) {
+                                System.out.println("Finished queries: " + processed + "/" + queries.size());
+                                System.out.flush();
+                            }
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadsCount);
+        List<Future<Void>> results = executor.invokeAll(tasks);
+        executor.shutdown();
+        if (writeException[0] != null) {
+            throw writeException[0];
+        }
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Evaluation of queries has failed!", e.getCause());
+            }
+        }
+
+        long time = Math.max(1, System.currentTimeMillis() - startTime);
+        Metrics.global().setGauge("batch_queries_per_second", queries.size() * 1000.0 / time);
+        System.out.println(queries.size() + " queries were evaluated for " + time + " ms"
+                + " (" + queries.size() * 1000 / time + " queries per second)!");
+    }
+
+    /**
+     * Every query is assigned to group of its word, that is shared by the most queries.
+     *
+     * @return indexes of queries, ordered by groups (the biggest groups first)
+     */
+    private static List<Integer> groupByWords(List<Set<String>> wordsByQuery) {
+        final Map<String, Integer> queriesCountByWord = new HashMap<>();
+        for (Set<String> words : wordsByQuery) {
+            for (String word : words) {
+                Integer count = queriesCountByWord.get(word);
+                queriesCountByWord.put(word, count == null ? 1 : count + 1);
+            }
+        }
+        final Map<String, List<Integer>> groups = new HashMap<>();
+        for (int i = 0; i < wordsByQuery.size(); i++) {
+            String groupWord = "";
+            int groupSize = 0;
+            for (String word : wordsByQuery.get(i)) {
+                int count = queriesCountByWord.get(word);
+                if (count > groupSize || (count == groupSize && word.compareTo(groupWord) < 0)) {
+                    groupWord = word;
+                    groupSize = count;
+                }
+            }
+            List<Integer> group = groups.get(groupWord);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(groupWord, group);
+            }
+            group.add(i);
+        }
+        List<String> groupWords = new ArrayList<>(groups.keySet());
+        Collections.sort(groupWords, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int bySize = Integer.compare(groups.get(b).size(), groups.get(a).size());
+                return bySize != 0 ? bySize : a.compareTo(b);
+            }
+        });
+        List<Integer> order = new ArrayList<>(wordsByQuery.size());
+        for (String word : groupWords) {
+            order.addAll(groups.get(word));
+        }
+        return order;
+    }
+}
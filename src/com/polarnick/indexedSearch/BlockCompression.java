@@ -0,0 +1,65 @@
+package com.polarnick.indexedSearch;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of index file chunks (term dictionary together with already encoded postings).
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public enum BlockCompression {
+
+    NONE(-1),
+    DEFLATE_FAST(Deflater.BEST_SPEED),
+    DEFLATE_BEST(Deflater.BEST_COMPRESSION);
+
+    private final int deflateLevel;
+
+    private BlockCompression(int deflateLevel) {
+        this.deflateLevel = deflateLevel;
+    }
+
+    public byte[] compress(byte[] data, int length) {
+        if (this == NONE) {
+            byte[] res = new byte[length];
+            System.arraycopy(data, 0, res, 0, length);
+            return res;
+        }
+        Deflater deflater = new Deflater(deflateLevel);
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        ByteArrayWriter compressed = new ByteArrayWriter(length / 2);
+        byte[] buffer = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            compressed.writeBytes(buffer, 0, count);
+        }
+        deflater.end();
+        return compressed.toByteArray();
+    }
+
+    public byte[] decompress(byte[] compressed, int rawLength) throws CorruptIndexException {
+        if (this == NONE) {
+            if (compressed.length != rawLength) {
+                throw new CorruptIndexException("Index chunk has wrong length!");
+            }
+            return compressed;
+        }
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int count = inflater.inflate(raw);
+            if (count != rawLength || !inflater.finished()) {
+                throw new CorruptIndexException("Index chunk has wrong length!");
+            }
+        } catch (DataFormatException e) {
+            throw new CorruptIndexException("Index chunk can't be decompressed!", e);
+        } finally {
+            inflater.end();
+        }
+        return raw;
+    }
+}
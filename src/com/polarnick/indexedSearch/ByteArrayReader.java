@@ -0,0 +1,90 @@
+package com.polarnick.indexedSearch;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of data, written by {@link ByteArrayWriter}. Not thread-safe.
+ * Reading beyond the end of data leads to {@link IndexOutOfBoundsException}.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class ByteArrayReader {
+
+    private final byte[] data;
+    private final int to;
+    private int position;
+
+    public ByteArrayReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public ByteArrayReader(byte[] data, int from, int to) {
+        this.data = data;
+        this.position = from;
+        this.to = to;
+    }
+
+    public boolean hasMore() {
+        return position < to;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int readByte() {
+        checkAvailable(1);
+        return data[position++] & 0xFF;
+    }
+
+    public int readVInt() {
+        int b = readByte();
+        int value = b & 0x7F;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            if (shift > 28) {
+                throw new IndexOutOfBoundsException("Too long variable-length integer at position " + position);
+            }
+            b = readByte();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    public long readVLong() {
+        int b = readByte();
+        long value = b & 0x7F;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            if (shift > 63) {
+                throw new IndexOutOfBoundsException("Too long variable-length long at position " + position);
+            }
+            b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    public void readBytes(byte[] bytes, int from, int length) {
+        checkAvailable(length);
+        System.arraycopy(data, position, bytes, from, length);
+        position += length;
+    }
+
+    public void skipBytes(int length) {
+        checkAvailable(length);
+        position += length;
+    }
+
+    public String readString() {
+        int length = readVInt();
+        checkAvailable(length);
+        String str = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return str;
+    }
+
+    private void checkAvailable(int count) {
+        if (count < 0 || position + count > to) {
+            throw new IndexOutOfBoundsException("Unexpected end of data at position " + position);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.polarnick.indexedSearch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable byte array with variable-length encoding of non-negative integers and longs (7 bits per byte).
+ * Not thread-safe.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class ByteArrayWriter {
+
+    private byte[] data;
+    private int size;
+
+    public ByteArrayWriter() {
+        this(1024);
+    }
+
+    public ByteArrayWriter(int capacity) {
+        this.data = new byte[Math.max(16, capacity)];
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        data[size++] = (byte) value;
+    }
+
+    public void writeBytes(byte[] bytes, int from, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, from, data, size, length);
+        size += length;
+    }
+
+    public void writeVInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    public void writeVLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            data[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[size++] = (byte) value;
+    }
+
+    public void writeString(String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVInt(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.polarnick.indexedSearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares postings codecs and chunks compressions on existing index:
+ * size of postings in memory, size of index file, time of saving/loading and speed of postings decoding.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class CodecBenchmark {
+
+    private static final int DECODE_ITERATIONS = 5;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage arguments: indexFile");
+            return;
+        }
+        Index source = Index.loadFromFile(args[0]);
+        Map<String, PostingList> sourcePostings = source.getPostingsByNormForm();
+
+        Map<String, int[]> files = new HashMap<>();
+        Map<String, int[][]> positions = new HashMap<>();
+        long positionsCount = 0;
+        for (Map.Entry<String, PostingList> entry : sourcePostings.entrySet()) {
+            PostingList postings = entry.getValue();
+            int[] termFiles = new int[postings.getFilesCount()];
+            int[][] termPositions = new int[postings.getFilesCount()][];
+            for (int i = 0; i < postings.getFilesCount(); i++) {
+                termFiles[i] = postings.getFile(i);
+                termPositions[i] = postings.decodePositions(i, source.getCodec());
+                positionsCount += termPositions[i].length;
+            }
+            files.put(entry.getKey(), termFiles);
+            positions.put(entry.getKey(), termPositions);
+        }
+
+        List<String> report = new ArrayList<>();
+        report.add(String.format("%-8s %-13s %12s %12s %10s %10s %14s %20s", "codec", "compression",
+                "memory, kb", "file, kb", "save, ms", "load, ms", "decode, M/s", "checksum"));
+        File tmpFile = File.createTempFile("codecBenchmark", ".idx");
+        tmpFile.deleteOnExit();
+        for (PostingsCodec codec : PostingsCodec.values()) {
+            Map<String, PostingList> postings = new HashMap<>(sourcePostings.size());
+            long memoryBytes = 0;
+            for (String normForm : sourcePostings.keySet()) {
+                PostingList postingList = PostingList.encode(files.get(normForm), positions.get(normForm), codec);
+                postings.put(normForm, postingList);
+                memoryBytes += postingList.getMemoryBytes();
+            }
+            Decoding decoding = measureDecoding(postings, codec, positionsCount);
+            FrequentTerms frequentTerms = FrequentTerms.build(postings, source.getDocuments().size(), codec,
+                    source.getFrequentTerms().getNormForms().size());
+
+            for (BlockCompression compression : BlockCompression.values()) {
+                Index index = new Index(source.getLangs(), codec, compression, source.getDocuments(), postings, frequentTerms);
+                long startTime = System.currentTimeMillis();
+                index.saveToFile(tmpFile.getPath());
+                long saveTime = System.currentTimeMillis() - startTime;
+
+                startTime = System.currentTimeMillis();
+                Index.loadFromFile(tmpFile.getPath());
+                long loadTime = System.currentTimeMillis() - startTime;
+
+                report.add(String.format("%-8s %-13s %12d %12d %10d %10d %14.1f %20d", codec, compression,
+                        memoryBytes / 1024, tmpFile.length() / 1024, saveTime, loadTime, decoding.speed, decoding.checksum));
+            }
+        }
+        tmpFile.delete();
+
+        System.out.println("Normal forms: " + sourcePostings.size() + ", documents: " + source.getDocuments().size()
+                + ", positions: " + positionsCount);
+        for (String line : report) {
+            System.out.println(line);
+        }
+    }
+
+    private static Decoding measureDecoding(Map<String, PostingList> postings, PostingsCodec codec, long positionsCount) {
+        long bestTime = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int iteration = 0; iteration < DECODE_ITERATIONS; iteration++) {
+            long startTime = System.nanoTime();
+            checksum = 0;
+            for (PostingList postingList : postings.values()) {
+                for (int i = 0; i < postingList.getFilesCount(); i++) {
+                    int[] decoded = postingList.decodePositions(i, codec);
+                    checksum += decoded[decoded.length - 1];
+                }
+            }
+            bestTime = Math.min(bestTime, System.nanoTime() - startTime);
+        }
+        return new Decoding(positionsCount * 1000.0 / Math.max(1, bestTime), checksum);
+    }
+
+    /**
+     * Speed of decoding (millions of positions per second, the best of several iterations) and sum of the last
+     * decoded positions of all files, that should be the same for all codecs (and keeps decoding from being optimized out).
+     */
+    private static class Decoding {
+        private final double speed;
+        private final long checksum;
+
+        Decoding(double speed, long checksum) {
+            this.speed = speed;
+            this.checksum = checksum;
+        }
+    }
+}
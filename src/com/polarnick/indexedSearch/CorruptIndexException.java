@@ -0,0 +1,21 @@
+package com.polarnick.indexedSearch;
+
+import java.io.IOException;
+
+/**
+ * Thrown, when index file is truncated, has wrong format or its checksum doesn't match.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class CorruptIndexException extends IOException {
+
+    private static final long serialVersionUID = 2391;
+
+    public CorruptIndexException(String message) {
+        super(message);
+    }
+
+    public CorruptIndexException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
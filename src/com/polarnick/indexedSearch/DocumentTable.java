@@ -0,0 +1,218 @@
+package com.polarnick.indexedSearch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Immutable table of indexed documents with dense ids {@code 0..size()-1}: paths and metadata of documents
+ * (length in tokens, size in bytes and modification time).
+ * Documents are sorted by path, so documents from the same directory have close ids, and paths are front-coded:
+ * in every block of {@link #BLOCK_SIZE} paths the first one is stored entirely,
+ * and others - as length of common prefix with previous path and the rest of path.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class DocumentTable {
+
+    private static final int BLOCK_SIZE = 16;
+
+    private final int size;
+    private final byte[] paths;
+    private final int[] blockOffsets;
+    private final int[] tokensCounts;
+    private final long[] sizes;
+    private final long[] modificationTimes;
+
+    private DocumentTable(byte[] paths, int[] tokensCounts, long[] sizes, long[] modificationTimes) {
+        this.size = tokensCounts.length;
+        this.paths = paths;
+        this.blockOffsets = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        this.tokensCounts = tokensCounts;
+        this.sizes = sizes;
+        this.modificationTimes = modificationTimes;
+
+        ByteArrayReader in = new ByteArrayReader(paths);
+        for (int i = 0; i < size; i++) {
+            if (i % BLOCK_SIZE == 0) {
+                blockOffsets[i / BLOCK_SIZE] = in.getPosition();
+            } else {
+                in.readVInt();
+            }
+            in.skipBytes(in.readVInt());
+        }
+        if (in.hasMore()) {
+            throw new IndexOutOfBoundsException("Unexpected data after the last path at position " + in.getPosition());
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getPath(int doc) {
+        checkDoc(doc);
+        ByteArrayReader in = new ByteArrayReader(paths, blockOffsets[doc / BLOCK_SIZE], paths.length);
+        byte[] path = new byte[0];
+        for (int i = doc - doc % BLOCK_SIZE; i <= doc; i++) {
+            int prefixLength = i % BLOCK_SIZE == 0 ? 0 : in.readVInt();
+            int suffixLength = in.readVInt();
+            path = Arrays.copyOf(path, prefixLength + suffixLength);
+            in.readBytes(path, prefixLength, suffixLength);
+        }
+        return new String(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return id of document with given path, or -1, if there is no such document
+     */
+    public int getDoc(String path) {
+        int fromBlock = 0;
+        int toBlock = blockOffsets.length - 1;
+        while (fromBlock < toBlock) {
+            int block = (fromBlock + toBlock + 1) / 2;
+            if (getPath(block * BLOCK_SIZE).compareTo(path) <= 0) {
+                fromBlock = block;
+            } else {
+                toBlock = block - 1;
+            }
+        }
+        for (int doc = fromBlock * BLOCK_SIZE; doc < Math.min(size, (fromBlock + 1) * BLOCK_SIZE); doc++) {
+            if (getPath(doc).equals(path)) {
+                return doc;
+            }
+        }
+        return -1;
+    }
+
+    public int getTokensCount(int doc) {
+        checkDoc(doc);
+        return tokensCounts[doc];
+    }
+
+    public long getSize(int doc) {
+        checkDoc(doc);
+        return sizes[doc];
+    }
+
+    public long getModificationTime(int doc) {
+        checkDoc(doc);
+        return modificationTimes[doc];
+    }
+
+    public long getMemoryBytes() {
+        final int arrayHeader = 16;
+        return arrayHeader * 5 + paths.length + 4L * (blockOffsets.length + size) + 8L * 2 * size;
+    }
+
+    private void checkDoc(int doc) {
+        if (doc < 0 || doc >= size) {
+            throw new IndexOutOfBoundsException("Unknown document " + doc + " (documents count: " + size + ")");
+        }
+    }
+
+    void writeTo(ByteArrayWriter out) {
+        out.writeVInt(size);
+        out.writeVInt(paths.length);
+        out.writeBytes(paths, 0, paths.length);
+        for (int doc = 0; doc < size; doc++) {
+            out.writeVInt(tokensCounts[doc]);
+            out.writeVLong(sizes[doc]);
+            out.writeVLong(modificationTimes[doc]);
+        }
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if data is corrupted
+     */
+    static DocumentTable readFrom(ByteArrayReader in) {
+        int size = in.readVInt();
+        byte[] paths = new byte[in.readVInt()];
+        in.readBytes(paths, 0, paths.length);
+        int[] tokensCounts = new int[size];
+        long[] sizes = new long[size];
+        long[] modificationTimes = new long[size];
+        for (int doc = 0; doc < size; doc++) {
+            tokensCounts[doc] = in.readVInt();
+            sizes[doc] = in.readVLong();
+            modificationTimes[doc] = in.readVLong();
+        }
+        return new DocumentTable(paths, tokensCounts, sizes, modificationTimes);
+    }
+
+    /**
+     * Collects documents while indexing in any order. Thread-safe.
+     */
+    public static class Builder {
+
+        private final List<String> paths = new ArrayList<>();
+        private final IntArrayList tokensCounts = new IntArrayList();
+        private long[] sizes = new long[16];
+        private long[] modificationTimes = new long[16];
+
+        /**
+         * @return temporary id of document (until {@link #build})
+         */
+        public synchronized int add(String path, long size, long modificationTime) {
+            int doc = paths.size();
+            if (doc == sizes.length) {
+                sizes = Arrays.copyOf(sizes, doc * 2);
+                modificationTimes = Arrays.copyOf(modificationTimes, doc * 2);
+            }
+            paths.add(path);
+            tokensCounts.add(0);
+            sizes[doc] = size;
+            modificationTimes[doc] = modificationTime;
+            return doc;
+        }
+
+        public synchronized void setTokensCount(int doc, int tokensCount) {
+            tokensCounts.set(doc, tokensCount);
+        }
+
+        public synchronized int size() {
+            return paths.size();
+        }
+
+        /**
+         * @param newDocs {@code newDocs[doc]} is filled with id in built table of document with temporary id {@code doc}
+         * @return table with documents sorted by path
+         */
+        public synchronized DocumentTable build(int[] newDocs) {
+            Integer[] order = new Integer[paths.size()];
+            for (int doc = 0; doc < order.length; doc++) {
+                order[doc] = doc;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return paths.get(a).compareTo(paths.get(b));
+                }
+            });
+            ByteArrayWriter out = new ByteArrayWriter();
+            int[] newTokensCounts = new int[order.length];
+            long[] newSizes = new long[order.length];
+            long[] newModificationTimes = new long[order.length];
+            byte[] prevPath = new byte[0];
+            for (int i = 0; i < order.length; i++) {
+                int doc = order[i];
+                newDocs[doc] = i;
+                byte[] path = paths.get(doc).getBytes(StandardCharsets.UTF_8);
+                int prefixLength = 0;
+                if (i % BLOCK_SIZE != 0) {
+                    while (prefixLength < Math.min(path.length, prevPath.length) && path[prefixLength] == prevPath[prefixLength]) {
+                        prefixLength++;
+                    }
+                    out.writeVInt(prefixLength);
+                }
+                out.writeVInt(path.length - prefixLength);
+                out.writeBytes(path, prefixLength, path.length - prefixLength);
+                prevPath = path;
+
+                newTokensCounts[i] = tokensCounts.get(doc);
+                newSizes[i] = sizes[doc];
+                newModificationTimes[i] = modificationTimes[doc];
+            }
+            return new DocumentTable(out.toByteArray(), newTokensCounts, newSizes, newModificationTimes);
+        }
+    }
+}
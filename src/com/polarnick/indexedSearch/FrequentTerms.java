@@ -0,0 +1,188 @@
+package com.polarnick.indexedSearch;
+
+import java.util.*;
+
+/**
+ * Auxiliary structures for normal forms, that occur in the most files (ties are broken by count of positions):
+ * <ul>
+ * <li>bitmaps of files, where every frequent normal form occurs,</li>
+ * <li>pair postings: for every two frequent normal forms A and B - positions of A, immediately followed by B.</li>
+ * </ul>
+ * Pairs are stored for all combinations of frequent normal forms, so absent pair means,
+ * that such normal forms never occur next to each other.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class FrequentTerms {
+
+    private static final int FILES_BATCH_SIZE = 1024;
+    private static final PostingList NO_POSTINGS = new PostingList(new int[0], new int[0], new int[1], new byte[0]);
+
+    private final List<String> normForms;
+    private final Map<String, BitSet> filesByNormForm;
+    private final Map<String, PostingList> pairs;
+
+    FrequentTerms(List<String> normForms, Map<String, PostingList> postingsByNormForm, Map<String, PostingList> pairs) {
+        this.normForms = normForms;
+        this.filesByNormForm = new HashMap<>();
+        for (String normForm : normForms) {
+            PostingList postings = postingsByNormForm.get(normForm);
+            BitSet files = new BitSet();
+            for (int i = 0; i < postings.getFilesCount(); i++) {
+                files.set(postings.getFile(i));
+            }
+            filesByNormForm.put(normForm, files);
+        }
+        this.pairs = pairs;
+    }
+
+    public static FrequentTerms build(Map<String, PostingList> postingsByNormForm, int filesCount,
+                                      PostingsCodec codec, int count) {
+        long startTime = System.currentTimeMillis();
+        List<Map.Entry<String, PostingList>> byFrequency = new ArrayList<>(postingsByNormForm.entrySet());
+        Collections.sort(byFrequency, new Comparator<Map.Entry<String, PostingList>>() {
+            @Override
+            public int compare(Map.Entry<String, PostingList> a, Map.Entry<String, PostingList> b) {
+                int byFiles = Integer.compare(b.getValue().getFilesCount(), a.getValue().getFilesCount());
+                return byFiles != 0 ? byFiles
+                        : Integer.compare(b.getValue().getTotalPositionsCount(), a.getValue().getTotalPositionsCount());
+            }
+        });
+        List<String> normForms = new ArrayList<>();
+        List<PostingList> postings = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, byFrequency.size()); i++) {
+            normForms.add(byFrequency.get(i).getKey());
+            postings.add(byFrequency.get(i).getValue());
+        }
+
+        // pairs are identified by (first * termsCount + second)
+        int termsCount = normForms.size();
+        Map<Integer, IntArrayList> pairFiles = new HashMap<>();
+        Map<Integer, List<int[]>> pairPositions = new HashMap<>();
+        int[] nextFile = new int[termsCount];
+        for (int batchStart = 0; batchStart < filesCount; batchStart += FILES_BATCH_SIZE) {
+            int batchEnd = Math.min(filesCount, batchStart + FILES_BATCH_SIZE);
+            // position << 32 | term - for every occurrence of every frequent normal form in every file of batch
+            Map<Integer, LongArrayBuilder> occurrencesByFile = new HashMap<>();
+            for (int term = 0; term < termsCount; term++) {
+                PostingList postingList = postings.get(term);
+                while (nextFile[term] < postingList.getFilesCount() && postingList.getFile(nextFile[term]) < batchEnd) {
+                    int file = postingList.getFile(nextFile[term]);
+                    LongArrayBuilder occurrences = occurrencesByFile.get(file);
+                    if (occurrences == null) {
+                        occurrences = new LongArrayBuilder();
+                        occurrencesByFile.put(file, occurrences);
+                    }
+                    for (int position : postingList.decodePositions(nextFile[term], codec)) {
+                        occurrences.add((long) position << 32 | term);
+                    }
+                    nextFile[term]++;
+                }
+            }
+            for (int file = batchStart; file < batchEnd; file++) {
+                LongArrayBuilder occurrences = occurrencesByFile.get(file);
+                if (occurrences != null) {
+                    addPairs(file, occurrences.toSortedArray(), termsCount, pairFiles, pairPositions);
+                }
+            }
+        }
+
+        Map<String, PostingList> pairs = new HashMap<>();
+        for (Map.Entry<Integer, IntArrayList> entry : pairFiles.entrySet()) {
+            int first = entry.getKey() / termsCount;
+            int second = entry.getKey() % termsCount;
+            int[][] positions = pairPositions.get(entry.getKey()).toArray(new int[0][]);
+            pairs.put(pairKey(normForms.get(first), normForms.get(second)),
+                    PostingList.encode(entry.getValue().toArray(), positions, codec));
+        }
+        System.out.println("Frequent normal forms (" + normForms.size() + ") and their pairs (" + pairs.size() + ")"
+                + " were indexed for " + (System.currentTimeMillis() - startTime) + " ms!");
+        return new FrequentTerms(normForms, postingsByNormForm, pairs);
+    }
+
+    private static void addPairs(int file, long[] occurrences, int termsCount,
+                                 Map<Integer, IntArrayList> pairFiles, Map<Integer, List<int[]>> pairPositions) {
+        Map<Integer, IntArrayList> positionsInFile = new HashMap<>();
+        int groupStart = 0;
+        while (groupStart < occurrences.length) {
+            int position = (int) (occurrences[groupStart] >>> 32);
+            int groupEnd = groupStart;
+            while (groupEnd < occurrences.length && (int) (occurrences[groupEnd] >>> 32) == position) {
+                groupEnd++;
+            }
+            int nextGroupEnd = groupEnd;
+            while (nextGroupEnd < occurrences.length && (int) (occurrences[nextGroupEnd] >>> 32) == position + 1) {
+                nextGroupEnd++;
+            }
+            for (int i = groupStart; i < groupEnd; i++) {
+                for (int j = groupEnd; j < nextGroupEnd; j++) {
+                    int pair = (int) occurrences[i] * termsCount + (int) occurrences[j];
+                    IntArrayList positions = positionsInFile.get(pair);
+                    if (positions == null) {
+                        positions = new IntArrayList();
+                        positionsInFile.put(pair, positions);
+                    }
+                    positions.add(position);
+                }
+            }
+            groupStart = groupEnd;
+        }
+        for (Map.Entry<Integer, IntArrayList> entry : positionsInFile.entrySet()) {
+            if (!pairFiles.containsKey(entry.getKey())) {
+                pairFiles.put(entry.getKey(), new IntArrayList());
+                pairPositions.put(entry.getKey(), new ArrayList<int[]>());
+            }
+            pairFiles.get(entry.getKey()).add(file);
+            pairPositions.get(entry.getKey()).add(entry.getValue().toArray());
+        }
+    }
+
+    private static String pairKey(String first, String second) {
+        return first + " " + second;
+    }
+
+    public boolean contains(String normForm) {
+        return filesByNormForm.containsKey(normForm);
+    }
+
+    /**
+     * @return files, where frequent normal form occurs (should not be modified)
+     */
+    public BitSet getFiles(String normForm) {
+        return filesByNormForm.get(normForm);
+    }
+
+    /**
+     * @return positions of frequent normal form {@code first}, immediately followed by frequent normal form {@code second}
+     */
+    public PostingList getPair(String first, String second) {
+        PostingList postings = pairs.get(pairKey(first, second));
+        return postings == null ? NO_POSTINGS : postings;
+    }
+
+    List<String> getNormForms() {
+        return normForms;
+    }
+
+    Map<String, PostingList> getPairs() {
+        return pairs;
+    }
+
+    private static class LongArrayBuilder {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toSortedArray() {
+            long[] res = Arrays.copyOf(values, size);
+            Arrays.sort(res);
+            return res;
+        }
+    }
+}
@@ -1,226 +1,417 @@
 package com.polarnick.indexedSearch;
 
-import java.io.*;
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author Polyarnyi Nikolay - PolarNick239
  */
-public class Index implements Serializable {
-
-    private static final long serialVersionUID = 2391;
+public class Index {
 
     private final List<Language> langs;
-    private transient ConcurrentMap<String, ConcurrentMap<String, List<Integer>>> resultsByNormForm;
-    private transient ThreadLocal<Map<String, Set<String>>> normalFormsCache;
+    private final ScriptDetector scriptDetector;
+    private final LongAdder[] analyzedTokens;
+    private final PostingsCodec codec;
+    private final BlockCompression blockCompression;
+    private final int frequentTermsCount;
+    // Caches of indexing threads, their counters are added to metrics while freezing. Empty after freezing.
+    private final Queue<NormalFormsCache> normalFormsCaches = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<NormalFormsCache> normalFormsCache = new ThreadLocal<NormalFormsCache>() {
+        @Override
+        protected NormalFormsCache initialValue() {
+            NormalFormsCache cache = new NormalFormsCache(langs.size());
+            if (!isFrozen()) {
+                normalFormsCaches.add(cache);
+            }
+            return cache;
+        }
+    };
+
+    // Documents and postings (by temporary ids of documents), filled while indexing. Null after freezing.
+    private DocumentTable.Builder documentsBuilder;
+    private PostingsBuilder postingsBuilder;
+
+    // Compact documents and postings, available after freezing.
+    private DocumentTable documents;
+    private Map<String, PostingList> postingsByNormForm;
+    private FrequentTerms frequentTerms;
+
+    public static final int DEFAULT_FREQUENT_TERMS_COUNT = 64;
 
     public Index(List<Language> langs) {
+        this(langs, PostingsCodec.VBYTE, BlockCompression.DEFLATE_FAST, DEFAULT_FREQUENT_TERMS_COUNT);
+    }
+
+    /**
+     * @param frequentTermsCount count of normal forms, that occur in the most files, for which pair postings and
+     *                           files bitmaps are built while freezing (see {@link FrequentTerms})
+     */
+    public Index(List<Language> langs, PostingsCodec codec, BlockCompression blockCompression, int frequentTermsCount) {
         this.langs = langs;
-        this.resultsByNormForm = new ConcurrentHashMap<>();
-        initCache();
+        this.scriptDetector = new ScriptDetector(langs);
+        this.analyzedTokens = createAnalyzedTokensCounters(langs);
+        this.codec = codec;
+        this.blockCompression = blockCompression;
+        this.frequentTermsCount = frequentTermsCount;
+        this.documentsBuilder = new DocumentTable.Builder();
+        this.postingsBuilder = new PostingsBuilder();
     }
 
-    private void initCache() {
-        normalFormsCache = new ThreadLocal<Map<String, Set<String>>>() {
-            @Override
-            protected Map<String, Set<String>> initialValue() {
-                return new HashMap<>();
-            }
-        };
+    Index(List<Language> langs, PostingsCodec codec, BlockCompression blockCompression,
+          DocumentTable documents, Map<String, PostingList> postingsByNormForm, FrequentTerms frequentTerms) {
+        this.langs = langs;
+        this.scriptDetector = new ScriptDetector(langs);
+        this.analyzedTokens = createAnalyzedTokensCounters(langs);
+        this.codec = codec;
+        this.blockCompression = blockCompression;
+        this.frequentTermsCount = frequentTerms.getNormForms().size();
+        this.documents = documents;
+        this.postingsByNormForm = postingsByNormForm;
+        this.frequentTerms = frequentTerms;
+    }
+
+    private static LongAdder[] createAnalyzedTokensCounters(List<Language> langs) {
+        LongAdder[] counters = new LongAdder[langs.size()];
+        for (int i = 0; i < langs.size(); i++) {
+            counters[i] = Metrics.global().counter(Metrics.withLabel("analyzed_tokens_total", "lang", langs.get(i).getName()));
+        }
+        return counters;
+    }
+
+    List<Language> getLangs() {
+        return langs;
+    }
+
+    public PostingsCodec getCodec() {
+        return codec;
+    }
+
+    public BlockCompression getBlockCompression() {
+        return blockCompression;
+    }
+
+    public boolean isFrozen() {
+        return postingsByNormForm != null;
+    }
+
+    public DocumentTable getDocuments() {
+        checkFrozen();
+        return documents;
+    }
+
+    Map<String, PostingList> getPostingsByNormForm() {
+        checkFrozen();
+        return postingsByNormForm;
+    }
+
+    FrequentTerms getFrequentTerms() {
+        checkFrozen();
+        return frequentTerms;
     }
 
-    public void put(String token, String file, int position) {
+    /**
+     * @return temporary id of document, that should be used to put its tokens (ids are reordered while freezing)
+     */
+    public int addDocument(String path, long size, long modificationTime) {
+        checkNotFrozen();
+        return documentsBuilder.add(path, size, modificationTime);
+    }
+
+    public void setTokensCount(int doc, int tokensCount) {
+        checkNotFrozen();
+        documentsBuilder.setTokensCount(doc, tokensCount);
+    }
+
+    /**
+     * Can be called from many threads at once without contention: postings are collected per thread
+     * (see {@link PostingsBuilder}) and so are counters of normal forms cache and analyzed tokens (they are
+     * added to metrics while freezing).
+     *
+     * @param doc temporary id of document, returned by {@link #addDocument}
+     */
+    public void put(String token, int doc, int position) {
+        checkNotFrozen();
         token = token.toLowerCase();
-        Set<String> normForms = getAllNormForms(token);
+        Set<String> normForms = getAllNormForms(token, normalFormsCache.get());
 
         for (String normForm : normForms) {
-            ConcurrentMap<String, List<Integer>> values = resultsByNormForm.get(normForm);
-            if (values == null) {
-                values = new ConcurrentHashMap<>();
-                ConcurrentMap<String, List<Integer>> oldSet = resultsByNormForm.putIfAbsent(normForm, values);
-                if (oldSet != null) {
-                    values = oldSet;
+            postingsBuilder.add(normForm, doc, position);
+        }
+    }
+
+    /**
+     * Converts postings, collected by {@link #put}, to compact form encoded with index codec.
+     * Documents are sorted by path and get their final ids (see {@link DocumentTable}).
+     * After that no more tokens can be put, but index can be searched and saved.
+     * Should be called after all {@link #put} calls are finished.
+     */
+    public void freeze() {
+        if (isFrozen()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        System.out.println("Freezing index with " + codec + " codec...");
+        for (NormalFormsCache cache : normalFormsCaches) {
+            cache.flushCounters(analyzedTokens);
+        }
+        // caches are still referenced by their threads (if they are alive), index shouldn't keep them
+        normalFormsCaches.clear();
+        Histogram bytesPerTerm = Metrics.global().histogram("postings_bytes_per_term");
+        Histogram filesPerTerm = Metrics.global().histogram("postings_files_per_term");
+        Histogram positionsPerTerm = Metrics.global().histogram("postings_positions_per_term");
+        long memoryBytes = 0;
+
+        int[] newDocs = new int[documentsBuilder.size()];
+        DocumentTable documents = documentsBuilder.build(newDocs);
+        Map<String, PostingList> postings = postingsBuilder.build(newDocs, codec);
+        for (PostingList postingList : postings.values()) {
+            bytesPerTerm.record(postingList.getData().length);
+            filesPerTerm.record(postingList.getFilesCount());
+            positionsPerTerm.record(postingList.getTotalPositionsCount());
+            memoryBytes += postingList.getMemoryBytes();
+        }
+        this.frequentTerms = FrequentTerms.build(postings, documents.size(), codec, frequentTermsCount);
+        this.documents = documents;
+        this.postingsByNormForm = postings;
+        this.documentsBuilder = null;
+        this.postingsBuilder = null;
+        Metrics.global().setGauge("postings_memory_bytes", memoryBytes);
+        Metrics.global().setGauge("documents_memory_bytes", documents.getMemoryBytes());
+        System.out.println("Index was frozen for " + (System.currentTimeMillis() - startTime) + " ms!"
+                + " Postings take " + memoryBytes / 1024 / 1024 + " mb, documents (" + documents.size() + ") take "
+                + documents.getMemoryBytes() / 1024 + " kb.");
+    }
+
+    private void checkNotFrozen() {
+        if (isFrozen()) {
+            throw new IllegalStateException("Index is already frozen!");
+        }
+    }
+
+    private void checkFrozen() {
+        if (!isFrozen()) {
+            throw new IllegalStateException("Index should be frozen first!");
+        }
+    }
+
+    /**
+     * @return increasing positions of all normal forms of given word, grouped by documents
+     */
+    public Map<Integer, int[]> get(String word) {
+        return get(word, null);
+    }
+
+    /**
+     * @param docsFilter if not null - only positions in these documents are decoded
+     * @return increasing positions of all normal forms of given word, grouped by documents
+     */
+    public Map<Integer, int[]> get(String word, BitSet docsFilter) {
+        Map<Integer, int[]> res = new HashMap<>();
+        for (String normForm : getQueryNormForms(word)) {
+            PostingList postingList = postingsByNormForm.get(normForm);
+            if (postingList == null) {
+                continue;
+            }
+            for (int i = 0; i < postingList.getFilesCount(); i++) {
+                if (docsFilter != null && !docsFilter.get(postingList.getFile(i))) {
+                    continue;
+                }
+                addPositions(res, postingList.getFile(i), postingList.decodePositions(i, codec));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return documents, where any normal form of given word occurs
+     */
+    /**
+     * @return true, if some normal form of word has files bitmap and pair postings (see {@link FrequentTerms})
+     */
+    public boolean isFrequent(String word) {
+        for (String normForm : getQueryNormForms(word)) {
+            if (frequentTerms.contains(normForm)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public BitSet getFilesBitmap(String word) {
+        BitSet res = new BitSet();
+        for (String normForm : getQueryNormForms(word)) {
+            if (frequentTerms.contains(normForm)) {
+                res.or(frequentTerms.getFiles(normForm));
+            } else {
+                PostingList postingList = postingsByNormForm.get(normForm);
+                if (postingList != null) {
+                    for (int i = 0; i < postingList.getFilesCount(); i++) {
+                        res.set(postingList.getFile(i));
+                    }
                 }
             }
-            List<Integer> indexes = values.get(file);
-            if(indexes == null) {
-                indexes = Collections.synchronizedList(new ArrayList<Integer>());
-                List<Integer> oldList = values.putIfAbsent(file, indexes);
-                if (oldList != null) {
-                    indexes = oldList;
+        }
+        return res;
+    }
+
+    /**
+     * Answers with pair postings of frequent normal forms.
+     *
+     * @return positions of word {@code first}, immediately followed by word {@code second}, grouped by documents,
+     * or null, if some normal forms of these words are not frequent
+     */
+    public Map<Integer, int[]> getFollowedBy(String first, String second) {
+        Set<String> firstNormForms = getFrequentQueryNormForms(first);
+        Set<String> secondNormForms = getFrequentQueryNormForms(second);
+        if (firstNormForms == null || secondNormForms == null) {
+            return null;
+        }
+        Map<Integer, int[]> res = new HashMap<>();
+        for (String firstNormForm : firstNormForms) {
+            for (String secondNormForm : secondNormForms) {
+                PostingList postingList = frequentTerms.getPair(firstNormForm, secondNormForm);
+                for (int i = 0; i < postingList.getFilesCount(); i++) {
+                    addPositions(res, postingList.getFile(i), postingList.decodePositions(i, codec));
                 }
             }
-            indexes.add(position);
         }
+        return res;
     }
 
-    public Map<String, List<Integer>> get(String word) {
+    /**
+     * @return normal forms of word, that occur in index, or null, if some of them are not frequent
+     */
+    private Set<String> getFrequentQueryNormForms(String word) {
+        Set<String> res = new HashSet<>();
+        for (String normForm : getQueryNormForms(word)) {
+            if (frequentTerms.contains(normForm)) {
+                res.add(normForm);
+            } else if (postingsByNormForm.containsKey(normForm)) {
+                return null;
+            }
+        }
+        return res;
+    }
+
+    private Set<String> getQueryNormForms(String word) {
+        checkFrozen();
         for (int i = 0; i < word.length(); i++) {
             if (!isCorrectLetter(word.charAt(i))) {
-                return Collections.emptyMap();
+                return Collections.emptySet();
             }
         }
+        NormalFormsCache cache = normalFormsCache.get();
+        Set<String> normForms = getAllNormForms(word.toLowerCase(), cache);
+        // there are few words per query, so their counters are added to metrics at once
+        cache.flushCounters(analyzedTokens);
+        return normForms;
+    }
 
-        word = word.toLowerCase();
-        Set<String> normForms = getAllNormForms(word);
+    private static void addPositions(Map<Integer, int[]> res, int doc, int[] positions) {
+        int[] oldPositions = res.put(doc, positions);
+        if (oldPositions != null) {
+            res.put(doc, union(oldPositions, positions));
+        }
+    }
 
-        Map<String, List<Integer>> res = new HashMap<>();
-        for (String normForm : normForms) {
-            Map<String, List<Integer>> values = resultsByNormForm.get(normForm);
-            if (values != null) {
-                res.putAll(values);
+    private static int[] union(int[] a, int[] b) {
+        int[] res = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < a.length || j < b.length) {
+            int value;
+            if (j == b.length || (i < a.length && a[i] <= b[j])) {
+                value = a[i++];
+            } else {
+                value = b[j++];
+            }
+            if (size == 0 || res[size - 1] != value) {
+                res[size++] = value;
             }
         }
-        return res;
+        return Arrays.copyOf(res, size);
     }
 
     public boolean isCorrectLetter(char c) {
-        for (Language lang : langs) {
-            if (lang.isCorrectLetter(c)) {
-                return true;
-            }
-        }
-        return false;
+        return scriptDetector.isLetter(c);
     }
 
-    private static AtomicInteger cacheMisses = new AtomicInteger(0);
-    private static AtomicInteger cacheHits = new AtomicInteger(0);
     private static final boolean CACHE_DISABLED = false;
-    private static final boolean CACHE_TRASING_DISABLED = true;
+    private static final LongAdder cacheHits = Metrics.global().counter("lemma_cache_hits_total");
+    private static final LongAdder cacheMisses = Metrics.global().counter("lemma_cache_misses_total");
 
-    private Set<String> getAllNormForms(String token) {
+    private Set<String> getAllNormForms(String token, NormalFormsCache cache) {
         Set<String> normForms;
         if (!CACHE_DISABLED) {
-            normForms = normalFormsCache.get().get(token);
+            normForms = cache.normForms.get(token);
             if (normForms != null) {
-                if (!CACHE_TRASING_DISABLED) {
-                    cacheHits.incrementAndGet();
-                }
+                cache.hits++;
                 return normForms;
             } else {
-                if (!CACHE_TRASING_DISABLED) {
-                    cacheMisses.incrementAndGet();
-                }
+                cache.misses++;
             }
         }
 
         normForms = new HashSet<>();
-        for (Language lang : langs) {
-            normForms.addAll(lang.getNormalForms(token));
+        int langsMask = scriptDetector.detect(token);
+        for (int i = 0; langsMask != 0; i++, langsMask >>>= 1) {
+            if ((langsMask & 1) != 0) {
+                normForms.addAll(langs.get(i).getNormalForms(token));
+                cache.analyzedTokens[i]++;
+            }
         }
         if (!CACHE_DISABLED) {
-            normalFormsCache.get().put(token, normForms);
+            cache.normForms.put(token, normForms);
         }
         return normForms;
     }
 
-    protected static void traceCacheHits() {
-        if (!CACHE_TRASING_DISABLED) {
-            int misses = cacheMisses.get();
-            int hits = cacheHits.get();
-            synchronized (System.out) {
-                if (misses + hits != 0) {
-                    System.out.println("Cache misses/hits: " + misses + "/" + hits + ". Hits: " + (hits * 100 / (hits + misses)) + "%");
-                    System.out.flush();
-                } else {
-                    System.out.println("Cache misses/hits: 0/0. Hits: 0%");
-                }
-            }
-        }
+    /**
+     * Counts are added to metrics only while freezing index (and right after evaluation of query words).
+     */
+    public static double getCacheHitRate() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
     }
 
     public void saveToFile(String fileName) throws IOException {
-        ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(new File(fileName))));
-        oos.writeObject(this);
-        oos.close();
+        IndexFile.save(this, fileName);
     }
 
-    public static Index loadFromFile(String fileName) throws IOException, ClassNotFoundException {
-        ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(new File(fileName))));
-        Index index = (Index) ois.readObject();
-        ois.close();
-        return index;
+    public static Index loadFromFile(String fileName) throws IOException {
+        return IndexFile.load(fileName);
     }
 
-    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
-        long startTime = System.currentTimeMillis();
-        System.out.println("Reading index...");
-        in.defaultReadObject();
-        initCache();
-        List<String> files = (List<String>) in.readObject();
-        System.out.println("Read values count: " + files.size());
-
-        int normsCount = in.readInt();
-        System.out.println("Reading norm forms (" + normsCount + ")...");
-
-        final int PROCENT_STEP = 10;
-        int nextProcent = PROCENT_STEP;
-        this.resultsByNormForm = new ConcurrentHashMap<>(normsCount);
-        for (int i = 1; i <= normsCount; i++) {
-            String normForm = (String) in.readObject();
-            int valuesCount = in.readInt();
-
-            ConcurrentMap<String, List<Integer>> occurs = this.resultsByNormForm.get(normForm);
-            if (occurs == null) {
-                occurs = new ConcurrentHashMap<>(valuesCount);
-            }
-            for (int j = 0; j < valuesCount; j++) {
-                occurs.put(files.get(in.readInt()), (List<Integer>) in.readObject());
-            }
-            this.resultsByNormForm.put(normForm, occurs);
 
-            int procent = i * 100 / normsCount;
-            if (procent >= nextProcent) {
-                System.out.println("Reading norm forms... (" + i + "/" + normsCount + ") " + procent + "%");
-                nextProcent += PROCENT_STEP;
-            }
-        }
-        System.out.println("Index reading was proceed for " + (System.currentTimeMillis() - startTime) + " ms!");
-    }
+    /**
+     * Normal forms of tokens, that were met by one thread, and counters of its lookups. Not thread-safe.
+     */
+    private static class NormalFormsCache {
+        private final Map<String, Set<String>> normForms = new HashMap<>();
+        private final long[] analyzedTokens;
+        private long hits;
+        private long misses;
 
-    private void writeObject(ObjectOutputStream out) throws IOException, ClassNotFoundException {
-        long startTime = System.currentTimeMillis();
-        System.out.println("Writing index...");
-        HashMap<String, Integer> filesIndexes = new HashMap<>();
-        {
-            List<String> values = new ArrayList<>();
-            for (String normalForm : resultsByNormForm.keySet()) {
-                for (String file : resultsByNormForm.get(normalForm).keySet()) {
-                    if (!filesIndexes.containsKey(file)) {
-                        filesIndexes.put(file, values.size());
-                        values.add(file);
-                    }
-                }
-            }
+        NormalFormsCache(int langsCount) {
+            this.analyzedTokens = new long[langsCount];
+        }
 
-            out.defaultWriteObject();
-            System.out.println("Writing different values... (count: " + values.size() + ")");
-            out.writeObject(values);
-        }
-        System.out.println("Writing normal forms... (count: " + this.resultsByNormForm.size() + ")");
-        final int PROCENT_STEP = 10;
-        int nextProcentToTrace = PROCENT_STEP;
-        int nextNorm = 1;
-        out.writeInt(resultsByNormForm.size());
-        for (String normalForm : resultsByNormForm.keySet()) {
-            out.writeObject(normalForm);
-            Map<String, List<Integer>> occurences = resultsByNormForm.get(normalForm);
-            out.writeInt(occurences.size());
-            for (Map.Entry<String, List<Integer>> occur : occurences.entrySet()) {
-                out.writeInt(filesIndexes.get(occur.getKey()));
-                out.writeObject(occur.getValue());
-            }
-            int currentProcent = nextNorm * 100 / resultsByNormForm.size();
-            if (currentProcent >= nextProcentToTrace) {
-                nextProcentToTrace += PROCENT_STEP;
-                System.out.println("Writing normal forms processed: " + currentProcent + "% (" + nextNorm + "/" + resultsByNormForm.size() + ")");
+        /**
+         * Adds counts to metrics and resets them. Should be called by owner thread or after it has finished.
+         */
+        void flushCounters(LongAdder[] analyzedTokensCounters) {
+            cacheHits.add(hits);
+            cacheMisses.add(misses);
+            hits = 0;
+            misses = 0;
+            for (int i = 0; i < analyzedTokens.length; i++) {
+                analyzedTokensCounters[i].add(analyzedTokens[i]);
+                analyzedTokens[i] = 0;
             }
-            nextNorm++;
         }
-        System.out.println("Writing index was finished for " + (System.currentTimeMillis() - startTime) + " ms!");
     }
-
 }
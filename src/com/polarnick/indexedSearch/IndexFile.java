@@ -0,0 +1,427 @@
+package com.polarnick.indexedSearch;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk format of {@link Index}:
+ * <pre>
+ * MAGIC VERSION
+ * frame with header: languages, postings codec, block compression and documents table
+ * chunksCount
+ * chunksCount frames with postings of disjoint sets of normal forms
+ * frame with frequent normal forms and their pair postings
+ * END_MARKER
+ * </pre>
+ * Every frame is: block compression, raw length, compressed length, CRC32 of raw data, CRC32 of these four fields
+ * and compressed data. Lengths are checked before any memory is allocated for frame,
+ * so corrupted file leads to {@link CorruptIndexException} instead of allocation of huge arrays.
+ * Chunks are independent, so they are compressed while saving and decompressed while loading in parallel.
+ * Positions are stored exactly as they are encoded in memory by {@link PostingsCodec} of index,
+ * so they are neither re-encoded while saving nor decoded while loading.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class IndexFile {
+
+    private static final int MAGIC = 0x49545331;
+    private static final int VERSION = 5;
+    private static final int END_MARKER = 0x454E4421;
+
+    private static final int CHUNK_MAX_BYTES = 1 << 22;
+    private static final int CHUNK_MAX_TERMS = 1 << 14;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    public static void save(Index index, String fileName) throws IOException {
+        long startTime = System.currentTimeMillis();
+        System.out.println("Writing index...");
+        final Map<String, PostingList> postingsByNormForm = index.getPostingsByNormForm();
+        final BlockCompression compression = index.getBlockCompression();
+        DocumentTable documents = index.getDocuments();
+
+        List<List<String>> chunks = new ArrayList<>();
+        {
+            List<String> chunk = new ArrayList<>();
+            int chunkBytes = 0;
+            for (Map.Entry<String, PostingList> entry : postingsByNormForm.entrySet()) {
+                chunkBytes += entry.getValue().getData().length;
+                chunk.add(entry.getKey());
+                if (chunkBytes >= CHUNK_MAX_BYTES || chunk.size() >= CHUNK_MAX_TERMS) {
+                    chunks.add(chunk);
+                    chunk = new ArrayList<>();
+                    chunkBytes = 0;
+                }
+            }
+            if (!chunk.isEmpty()) {
+                chunks.add(chunk);
+            }
+        }
+        System.out.println("Writing normal forms... (count: " + postingsByNormForm.size()
+                + ", documents: " + documents.size() + ", chunks: " + chunks.size() + ")");
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<Frame>> frames = new ArrayList<>();
+            for (final List<String> chunk : chunks) {
+                frames.add(executor.submit(new Callable<Frame>() {
+                    @Override
+                    public Frame call() throws Exception {
+                        return Frame.compress(encodeChunk(chunk, postingsByNormForm), compression);
+                    }
+                }));
+            }
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(fileName)), BUFFER_SIZE));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                Frame.compress(encodeHeader(index, documents), compression).writeTo(out);
+                out.writeInt(chunks.size());
+                Progress progress = new Progress("Writing normal forms chunks", chunks.size());
+                for (int i = 0; i < frames.size(); i++) {
+                    frames.get(i).get().writeTo(out);
+                    frames.set(i, null);
+                    progress.step();
+                }
+                Frame.compress(encodeFrequentTerms(index.getFrequentTerms()), compression).writeTo(out);
+                out.writeInt(END_MARKER);
+            } finally {
+                out.close();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Index writing was interrupted!");
+        } catch (ExecutionException e) {
+            throw new IOException("Index chunk encoding failed!", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long time = System.currentTimeMillis() - startTime;
+        Metrics.global().setGauge("index_save_seconds", time / 1000.0);
+        System.out.println("Writing index was finished for " + time + " ms!");
+    }
+
+    public static Index load(String fileName) throws IOException {
+        long startTime = System.currentTimeMillis();
+        System.out.println("Reading index...");
+        File file = new File(fileName);
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        DataInputStream in = new DataInputStream(counter);
+        long fileLength = file.length();
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new CorruptIndexException("File '" + fileName + "' is not an index file!");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new CorruptIndexException("Unsupported index file version: " + version + " (expected: " + VERSION + ")");
+            }
+            ByteArrayReader header = new ByteArrayReader(Frame.readFrom(in, fileLength - counter.getCount()).decompress());
+            List<Language> langs = new ArrayList<>();
+            PostingsCodec codec;
+            BlockCompression compression;
+            final DocumentTable documents;
+            try {
+                int langsCount = header.readVInt();
+                for (int i = 0; i < langsCount; i++) {
+                    langs.add(Languages.get(header.readString()));
+                }
+                codec = PostingsCodec.valueOf(header.readString());
+                compression = BlockCompression.valueOf(header.readString());
+                documents = DocumentTable.readFrom(header);
+            } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new CorruptIndexException("Index header is corrupted!", e);
+            }
+            System.out.println("Read documents count: " + documents.size());
+
+            int chunksCount = in.readInt();
+            System.out.println("Reading normal forms chunks (" + chunksCount + ")...");
+            final ConcurrentMap<String, PostingList> postingsByNormForm = new ConcurrentHashMap<>();
+            final Progress progress = new Progress("Reading normal forms chunks", chunksCount);
+            List<Future<Void>> decoded = new ArrayList<>();
+            for (int i = 0; i < chunksCount; i++) {
+                final Frame frame = Frame.readFrom(in, fileLength - counter.getCount());
+                decoded.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        decodeChunk(frame.decompress(), documents.size(), postingsByNormForm);
+                        progress.step();
+                        return null;
+                    }
+                }));
+            }
+            Frame frequentTermsFrame = Frame.readFrom(in, fileLength - counter.getCount());
+            if (in.readInt() != END_MARKER) {
+                throw new CorruptIndexException("No end marker was found at the end of index file!");
+            }
+            for (Future<Void> future : decoded) {
+                future.get();
+            }
+            FrequentTerms frequentTerms = decodeFrequentTerms(frequentTermsFrame.decompress(), documents.size(), postingsByNormForm);
+
+            long time = System.currentTimeMillis() - startTime;
+            Metrics.global().setGauge("index_load_seconds", time / 1000.0);
+            System.out.println("Index reading was proceed for " + time + " ms!");
+            return new Index(langs, codec, compression, documents, new HashMap<>(postingsByNormForm), frequentTerms);
+        } catch (EOFException e) {
+            throw new CorruptIndexException("Index file '" + fileName + "' is truncated!", e);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Index reading was interrupted!");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new CorruptIndexException("Index chunk is corrupted!", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            in.close();
+        }
+    }
+
+    private static ByteArrayWriter encodeHeader(Index index, DocumentTable documents) {
+        ByteArrayWriter out = new ByteArrayWriter();
+        out.writeVInt(index.getLangs().size());
+        for (Language lang : index.getLangs()) {
+            out.writeString(lang.getName());
+        }
+        out.writeString(index.getCodec().name());
+        out.writeString(index.getBlockCompression().name());
+        documents.writeTo(out);
+        return out;
+    }
+
+    private static ByteArrayWriter encodeChunk(List<String> normForms, Map<String, PostingList> postingsByNormForm) {
+        ByteArrayWriter out = new ByteArrayWriter();
+        for (String normForm : normForms) {
+            out.writeString(normForm);
+            writePostings(out, postingsByNormForm.get(normForm));
+        }
+        return out;
+    }
+
+    private static void decodeChunk(byte[] data, int filesCount, ConcurrentMap<String, PostingList> postingsByNormForm) throws CorruptIndexException {
+        ByteArrayReader in = new ByteArrayReader(data);
+        try {
+            while (in.hasMore()) {
+                String normForm = in.readString();
+                postingsByNormForm.put(normForm, readPostings(in, filesCount));
+            }
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new CorruptIndexException("Index chunk is corrupted!", e);
+        }
+    }
+
+    private static ByteArrayWriter encodeFrequentTerms(FrequentTerms frequentTerms) {
+        ByteArrayWriter out = new ByteArrayWriter();
+        out.writeVInt(frequentTerms.getNormForms().size());
+        for (String normForm : frequentTerms.getNormForms()) {
+            out.writeString(normForm);
+        }
+        out.writeVInt(frequentTerms.getPairs().size());
+        for (Map.Entry<String, PostingList> pair : frequentTerms.getPairs().entrySet()) {
+            out.writeString(pair.getKey());
+            writePostings(out, pair.getValue());
+        }
+        return out;
+    }
+
+    private static FrequentTerms decodeFrequentTerms(byte[] data, int filesCount, Map<String, PostingList> postingsByNormForm) throws CorruptIndexException {
+        ByteArrayReader in = new ByteArrayReader(data);
+        try {
+            int normFormsCount = in.readVInt();
+            List<String> normForms = new ArrayList<>(normFormsCount);
+            for (int i = 0; i < normFormsCount; i++) {
+                String normForm = in.readString();
+                if (!postingsByNormForm.containsKey(normForm)) {
+                    throw new CorruptIndexException("Unknown frequent normal form '" + normForm + "'!");
+                }
+                normForms.add(normForm);
+            }
+            int pairsCount = in.readVInt();
+            Map<String, PostingList> pairs = new HashMap<>(pairsCount);
+            for (int i = 0; i < pairsCount; i++) {
+                String pair = in.readString();
+                pairs.put(pair, readPostings(in, filesCount));
+            }
+            return new FrequentTerms(normForms, postingsByNormForm, pairs);
+        } catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new CorruptIndexException("Frequent normal forms are corrupted!", e);
+        }
+    }
+
+    /**
+     * Files of postings are increasing, so they are written as deltas.
+     */
+    private static void writePostings(ByteArrayWriter out, PostingList postings) {
+        out.writeVInt(postings.getFilesCount());
+        int prevFile = 0;
+        for (int i = 0; i < postings.getFilesCount(); i++) {
+            out.writeVInt(postings.getFile(i) - prevFile);
+            out.writeVInt(postings.getPositionsCount(i));
+            out.writeVInt(postings.getDataLength(i));
+            prevFile = postings.getFile(i);
+        }
+        out.writeBytes(postings.getData(), 0, postings.getData().length);
+    }
+
+    private static PostingList readPostings(ByteArrayReader in, int filesCount) throws CorruptIndexException {
+        int termFilesCount = in.readVInt();
+        int[] files = new int[termFilesCount];
+        int[] counts = new int[termFilesCount];
+        int[] offsets = new int[termFilesCount + 1];
+        int file = 0;
+        for (int i = 0; i < termFilesCount; i++) {
+            file += in.readVInt();
+            if (file >= filesCount) {
+                throw new CorruptIndexException("Postings refer to unknown file " + file + "!");
+            }
+            files[i] = file;
+            counts[i] = in.readVInt();
+            offsets[i + 1] = offsets[i] + in.readVInt();
+        }
+        byte[] positions = new byte[offsets[termFilesCount]];
+        in.readBytes(positions, 0, positions.length);
+        return new PostingList(files, counts, offsets, positions);
+    }
+
+    private static class Frame {
+        // compression, raw length, compressed length and CRC32 of raw data
+        private static final int HEADER_LENGTH = 1 + 4 + 4 + 4;
+
+        private final BlockCompression compression;
+        private final int rawLength;
+        private final int crc;
+        private final byte[] compressed;
+
+        private Frame(BlockCompression compression, int rawLength, int crc, byte[] compressed) {
+            this.compression = compression;
+            this.rawLength = rawLength;
+            this.crc = crc;
+            this.compressed = compressed;
+        }
+
+        static Frame compress(ByteArrayWriter raw, BlockCompression compression) {
+            return new Frame(compression, raw.size(), checksum(raw.getData(), raw.size()), compression.compress(raw.getData(), raw.size()));
+        }
+
+        byte[] decompress() throws CorruptIndexException {
+            byte[] raw = compression.decompress(compressed, rawLength);
+            if (checksum(raw, raw.length) != crc) {
+                throw new CorruptIndexException("Index chunk checksum mismatch!");
+            }
+            return raw;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            ByteArrayOutputStream header = new ByteArrayOutputStream(HEADER_LENGTH);
+            DataOutputStream headerOut = new DataOutputStream(header);
+            headerOut.writeByte(compression.ordinal());
+            headerOut.writeInt(rawLength);
+            headerOut.writeInt(compressed.length);
+            headerOut.writeInt(crc);
+            byte[] headerBytes = header.toByteArray();
+            out.write(headerBytes);
+            out.writeInt(checksum(headerBytes, headerBytes.length));
+            out.write(compressed);
+        }
+
+        /**
+         * @param bytesLeft count of bytes till the end of file
+         */
+        static Frame readFrom(DataInputStream in, long bytesLeft) throws IOException {
+            byte[] header = new byte[HEADER_LENGTH];
+            in.readFully(header);
+            if (in.readInt() != checksum(header, header.length)) {
+                throw new CorruptIndexException("Index chunk header checksum mismatch!");
+            }
+            DataInputStream headerIn = new DataInputStream(new ByteArrayInputStream(header));
+            int compression = headerIn.readUnsignedByte();
+            int rawLength = headerIn.readInt();
+            int compressedLength = headerIn.readInt();
+            int crc = headerIn.readInt();
+            if (compression >= BlockCompression.values().length) {
+                throw new CorruptIndexException("Index chunk has unknown compression: " + compression + "!");
+            }
+            if (rawLength < 0 || compressedLength < 0) {
+                throw new CorruptIndexException("Index chunk has negative length!");
+            }
+            if (compressedLength > bytesLeft - HEADER_LENGTH - 4) {
+                throw new CorruptIndexException("Index chunk is longer than the rest of file!");
+            }
+            byte[] compressed = new byte[compressedLength];
+            in.readFully(compressed);
+            return new Frame(BlockCompression.values()[compression], rawLength, crc, compressed);
+        }
+    }
+
+    private static int checksum(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static class Progress {
+        private static final int PROCENT_STEP = 10;
+
+        private final String what;
+        private final int total;
+        private int done = 0;
+        private int nextProcent = PROCENT_STEP;
+
+        Progress(String what, int total) {
+            this.what = what;
+            this.total = total;
+        }
+
+        synchronized void step() {
+            done++;
+            int procent = done * 100 / total;
+            if (procent >= nextProcent) {
+                nextProcent = (procent / PROCENT_STEP + 1) * PROCENT_STEP;
+                synchronized (System.out) {
+                    System.out.println(what + "... (" + done + "/" + total + ") " + procent + "%");
+                }
+            }
+        }
+    }
+}
@@ -12,6 +12,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author Polyarnyi Nikolay - PolarNick239
@@ -20,9 +21,14 @@ public class Indexer {
 
     public static void main(String[] args) throws IOException {
         if (args.length == 0) {
-            System.out.println("Usage arguments: [-jN] [-f indexFileName] [dirs]*");
+            System.out.println("Usage arguments: [-jN] [-f indexFileName] [-l languages] [-c codec] [-z compression] [-s N] [-m metricsFileName] [dirs]*");
             System.out.println("Where '-jN' - count of threads to build index. For example to index in 4 threads: -j4");
             System.out.println("Where '-f indexFileName' - count of threads to build index. For example to index in 4 threads: -j4");
+            System.out.println("Where '-l languages' - comma-separated languages of documents, some of " + Languages.getAll() + " (default: RU,EN)");
+            System.out.println("Where '-c codec' - postings codec, one of " + Arrays.toString(PostingsCodec.values()) + " (default: VBYTE)");
+            System.out.println("Where '-z compression' - index file chunks compression, one of " + Arrays.toString(BlockCompression.values()) + " (default: DEFLATE_FAST)");
+            System.out.println("Where '-s N' - count of normal forms, that occur in the most files, to build pair postings and files bitmaps for (default: " + Index.DEFAULT_FREQUENT_TERMS_COUNT + ")");
+            System.out.println("Where '-m metricsFileName' - file to save metrics in (JSON if name ends with '.json', Prometheus text format otherwise)");
             System.out.println("Where 'dirs' - directories or files to be indexed");
             return;
         }
@@ -30,6 +36,11 @@ public class Indexer {
         final Map<File, String> files = new HashMap<>();
         int threadsCount = 2;
         String indexFilename = "index.ser";
+        String metricsFilename = null;
+        PostingsCodec codec = PostingsCodec.VBYTE;
+        BlockCompression compression = BlockCompression.DEFLATE_FAST;
+        int frequentTermsCount = Index.DEFAULT_FREQUENT_TERMS_COUNT;
+        List<Language> langs = Arrays.asList(Languages.RU, Languages.EN);
 
         for (int i = 0; i < args.length; i++) {
             String arg = args[i];
@@ -49,6 +60,63 @@ public class Indexer {
                 continue;
             }
 
+            if (arg.equals("-l")) {
+                if (i == args.length - 1) {
+                    System.out.println("Flag '-l' should be followed by comma-separated languages!");
+                    return;
+                }
+                i++;
+                langs = new ArrayList<>();
+                try {
+                    for (String name : args[i].split(",")) {
+                        langs.add(Languages.get(name.trim()));
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    return;
+                }
+                continue;
+            }
+
+            if (arg.equals("-s")) {
+                if (i == args.length - 1) {
+                    System.out.println("Flag '-s' should be followed by count of frequent normal forms!");
+                    return;
+                }
+                i++;
+                frequentTermsCount = Integer.parseInt(args[i]);
+                continue;
+            }
+
+            if (arg.equals("-c") || arg.equals("-z")) {
+                if (i == args.length - 1) {
+                    System.out.println("Flag '" + arg + "' should be followed by its value!");
+                    return;
+                }
+                i++;
+                try {
+                    if (arg.equals("-c")) {
+                        codec = PostingsCodec.valueOf(args[i].toUpperCase());
+                    } else {
+                        compression = BlockCompression.valueOf(args[i].toUpperCase());
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Unknown value of flag '" + arg + "': '" + args[i] + "'");
+                    return;
+                }
+                continue;
+            }
+
+            if (arg.equals("-m")) {
+                if (i == args.length - 1) {
+                    System.out.println("Flag '-m' should be followed by output metrics filename!");
+                    return;
+                }
+                i++;
+                metricsFilename = args[i];
+                continue;
+            }
+
             File file = new File(arg);
             if (!file.exists()) {
                 System.out.println("There are no '" + arg + "' was found!");
@@ -66,12 +134,15 @@ public class Indexer {
         }
         System.out.println("Count of threads to be used: " + threadsCount);
         System.out.println("Index will be saved to file: '" + indexFilename + "'");
+        System.out.println("Languages: " + langs);
+        System.out.println("Postings codec: " + codec + ", chunks compression: " + compression
+                + ", frequent normal forms: " + frequentTermsCount);
 
         Indexer indexer = new Indexer();
         Index index;
         try {
             long startTime = System.currentTimeMillis();
-            index = indexer.index(files, Arrays.asList(Language.RU, Language.EN), threadsCount);
+            index = indexer.index(files, langs, codec, compression, frequentTermsCount, threadsCount);
             long time = System.currentTimeMillis() - startTime;
             System.out.println("Index was build for "
                     + time + " ms = "
@@ -84,6 +155,10 @@ public class Indexer {
 
         index.saveToFile(indexFilename);
         System.out.println("Index was saved to file: " + indexFilename);
+        if (metricsFilename != null) {
+            Metrics.global().saveToFile(metricsFilename);
+            System.out.println("Metrics were saved to file: " + metricsFilename);
+        }
 
         Searcher searcher = new Searcher(index);
         BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
@@ -93,11 +168,11 @@ public class Indexer {
         String line = in.readLine();
         while (line != null && !line.isEmpty()) {
             try {
-                Set matches = searcher.find(line);
-                if (matches.size() == 0) {
+                Searcher.SearchResult result = searcher.search(line);
+                if (result.getMatches().size() == 0) {
                     System.out.println("No matches!");
                 } else {
-                    System.out.println(matches.size() + " matches: " + matches);
+                    System.out.println(result.getMatches().size() + " matches: " + result);
                 }
             } catch (IllegalArgumentException e) {
                 System.out.println("Incorrect query!");
@@ -107,10 +182,21 @@ public class Indexer {
         }
     }
 
-    public Index index(Map<File, String> files, final List<Language> langs, int threadsCount) throws IOException, InterruptedException {
-        final Index index = new Index(langs);
+    public Index index(Map<File, String> files, List<Language> langs, int threadsCount) throws IOException, InterruptedException {
+        return index(files, langs, PostingsCodec.VBYTE, BlockCompression.DEFLATE_FAST, Index.DEFAULT_FREQUENT_TERMS_COUNT, threadsCount);
+    }
+
+    /**
+     * @return frozen index of given files
+     */
+    public Index index(Map<File, String> files, List<Language> langs, PostingsCodec codec, BlockCompression compression,
+                       int frequentTermsCount, int threadsCount) throws IOException, InterruptedException {
+        final Index index = new Index(langs, codec, compression, frequentTermsCount);
         final AtomicInteger fileProcessed = new AtomicInteger(0);
         final AtomicLong sizeProcessed = new AtomicLong(0);
+        final LongAdder tokensCounter = Metrics.global().counter("indexed_tokens_total");
+        final LongAdder bytesCounter = Metrics.global().counter("indexed_bytes_total");
+        final LongAdder filesCounter = Metrics.global().counter("indexed_files_total");
         long totalSize = 0;
         for (File file : files.keySet()) {
             totalSize += file.length();
@@ -124,27 +210,31 @@ public class Indexer {
             tasks.add(new Callable<Void>() {
                 @Override
                 public Void call() throws Exception {
-                    Index.traceCacheHits();
                     File file = fileEntry.getKey();
                     String name = fileEntry.getValue();
 
                     IOException exception = null;
+                    int doc = index.addDocument(name, file.length(), file.lastModified());
                     try {
                         BufferedReader in = new BufferedReader(new FileReader(file));
                         String line = in.readLine();
                         int nextWordIndex = 1;
                         while (line != null) {
-                            List<String> words = getWords(line, langs);
+                            List<String> words = getWords(line, index);
                             for (String token : words) {
-                                index.put(token, name, nextWordIndex);
+                                index.put(token, doc, nextWordIndex);
                                 nextWordIndex++;
                             }
                             line = in.readLine();
                         }
                         in.close();
+                        index.setTokensCount(doc, nextWordIndex - 1);
+                        tokensCounter.add(nextWordIndex - 1);
                     } catch (IOException e) {
                         exception = e;
                     }
+                    bytesCounter.add(file.length());
+                    filesCounter.increment();
                     synchronized (System.out) {
                         if (exception != null) {
                             System.out.println("Exception occurred, while processing file: " + file + "\n" + exception);
@@ -162,21 +252,25 @@ public class Indexer {
 
         ExecutorService executor = Executors.newFixedThreadPool(threadsCount);
         executor.invokeAll(tasks);
+        executor.shutdown();
+
+        double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+        Metrics metrics = Metrics.global();
+        metrics.setGauge("indexing_seconds", seconds);
+        metrics.setGauge("indexing_mb_per_second", bytesCounter.sum() / 1024.0 / 1024.0 / seconds);
+        metrics.setGauge("indexing_tokens_per_second", tokensCounter.sum() / seconds);
+
+        index.freeze();
+        metrics.setGauge("lemma_cache_hit_rate", Index.getCacheHitRate());
         return index;
     }
 
-    private static List<String> getWords(String line, List<Language> langs) {
+    private static List<String> getWords(String line, Index index) {
         List<String> words = new ArrayList<>();
         StringBuilder curWord = new StringBuilder();
         for (int charI = 0; charI < line.length(); charI++) {
             char c = line.charAt(charI);
-            boolean isLetter = false;
-            for (Language lang : langs) {
-                if (lang.isCorrectLetter(c)) {
-                    isLetter = true;
-                }
-            }
-            if (isLetter) {
+            if (index.isCorrectLetter(c)) {
                 curWord.append(c);
             } else {
                 if (curWord.length() != 0) {
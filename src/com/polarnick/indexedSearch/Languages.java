@@ -0,0 +1,64 @@
+package com.polarnick.indexedSearch;
+
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Registry of available languages: built-in russian and english morphologies
+ * and all implementations of {@link Language}, listed in META-INF/services/com.polarnick.indexedSearch.Language.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class Languages {
+
+    public static final Language RU = new MorphologyLanguage("RU", Arrays.asList('а', 'А'), Arrays.asList('я', 'Я')) {
+        @Override
+        protected LuceneMorphology createMorphology() throws IOException {
+            return new RussianLuceneMorphology();
+        }
+    };
+
+    public static final Language EN = new MorphologyLanguage("EN", Arrays.asList('a', 'A'), Arrays.asList('z', 'Z')) {
+        @Override
+        protected LuceneMorphology createMorphology() throws IOException {
+            return new EnglishLuceneMorphology();
+        }
+    };
+
+    private static final Map<String, Language> languagesByName = new LinkedHashMap<>();
+
+    static {
+        register(RU);
+        register(EN);
+        for (Language language : ServiceLoader.load(Language.class)) {
+            register(language);
+        }
+    }
+
+    public static synchronized void register(Language language) {
+        String name = language.getName().toUpperCase();
+        if (languagesByName.containsKey(name)) {
+            throw new IllegalArgumentException("Language with name '" + name + "' is already registered!");
+        }
+        languagesByName.put(name, language);
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no language with such name
+     */
+    public static synchronized Language get(String name) {
+        Language language = languagesByName.get(name.toUpperCase());
+        if (language == null) {
+            throw new IllegalArgumentException("Unknown language '" + name + "'! Available languages: " + languagesByName.keySet());
+        }
+        return language;
+    }
+
+    public static synchronized List<Language> getAll() {
+        return new ArrayList<>(languagesByName.values());
+    }
+}
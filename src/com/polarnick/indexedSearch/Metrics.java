@@ -0,0 +1,231 @@
+package com.polarnick.indexedSearch;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of counters, gauges and histograms of indexer and searcher, with slow-query log.
+ * Can be exported as JSON or as Prometheus text exposition format.
+ *
+ * Metric names may contain one label, for example: {@code query_latency_micros{op="and"}}.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class Metrics {
+
+    private static final Metrics GLOBAL = new Metrics();
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final int SLOW_QUERIES_LOG_SIZE = 100;
+    private static final long DEFAULT_SLOW_QUERY_THRESHOLD_MICROS = 1000 * 1000;
+
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Double> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+    private volatile long slowQueryThresholdMicros = DEFAULT_SLOW_QUERY_THRESHOLD_MICROS;
+
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    public static String withLabel(String name, String label, String value) {
+        return name + "{" + label + "=\"" + value + "\"}";
+    }
+
+    public LongAdder counter(String name) {
+        LongAdder counter = counters.get(name);
+        if (counter == null) {
+            counter = new LongAdder();
+            LongAdder oldCounter = counters.putIfAbsent(name, counter);
+            if (oldCounter != null) {
+                counter = oldCounter;
+            }
+        }
+        return counter;
+    }
+
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            Histogram oldHistogram = histograms.putIfAbsent(name, histogram);
+            if (oldHistogram != null) {
+                histogram = oldHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    public void setGauge(String name, double value) {
+        gauges.put(name, value);
+    }
+
+    public void setSlowQueryThresholdMicros(long thresholdMicros) {
+        this.slowQueryThresholdMicros = thresholdMicros;
+    }
+
+    /**
+     * Remembers query in slow-query log, if it took longer than threshold.
+     *
+     * @return true, if query was considered as slow
+     */
+    public boolean logIfSlow(String query, QueryProfile profile) {
+        long micros = profile.getNanos() / 1000;
+        if (micros < slowQueryThresholdMicros) {
+            return false;
+        }
+        counter("slow_queries_total").increment();
+        synchronized (slowQueries) {
+            if (slowQueries.size() == SLOW_QUERIES_LOG_SIZE) {
+                slowQueries.removeFirst();
+            }
+            slowQueries.addLast(new SlowQuery(System.currentTimeMillis(), query, profile));
+        }
+        synchronized (System.out) {
+            System.out.println("Slow query (" + micros / 1000 + " ms): '" + query + "'\n" + profile);
+            System.out.flush();
+        }
+        return true;
+    }
+
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            return new ArrayList<>(slowQueries);
+        }
+    }
+
+    public String toJson() {
+        StringBuilder res = new StringBuilder();
+        res.append("{\n  \"counters\": {");
+        String separator = "\n";
+        for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+            res.append(separator).append("    ").append(jsonString(counter.getKey())).append(": ").append(counter.getValue().sum());
+            separator = ",\n";
+        }
+        res.append("\n  },\n  \"gauges\": {");
+        separator = "\n";
+        for (Map.Entry<String, Double> gauge : new TreeMap<>(gauges).entrySet()) {
+            res.append(separator).append("    ").append(jsonString(gauge.getKey())).append(": ").append(gauge.getValue());
+            separator = ",\n";
+        }
+        res.append("\n  },\n  \"histograms\": {");
+        separator = "\n";
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            res.append(separator).append("    ").append(jsonString(entry.getKey())).append(": {");
+            res.append("\"count\": ").append(histogram.getCount());
+            res.append(", \"sum\": ").append(histogram.getSum());
+            res.append(", \"mean\": ").append(histogram.getMean());
+            for (double quantile : QUANTILES) {
+                res.append(", \"p").append(quantileName(quantile)).append("\": ").append(histogram.getValueAtQuantile(quantile));
+            }
+            res.append(", \"max\": ").append(histogram.getMax()).append("}");
+            separator = ",\n";
+        }
+        res.append("\n  },\n  \"slowQueries\": [");
+        separator = "\n";
+        for (SlowQuery slowQuery : getSlowQueries()) {
+            res.append(separator).append("    {\"time\": ").append(slowQuery.time);
+            res.append(", \"query\": ").append(jsonString(slowQuery.query));
+            res.append(", \"profile\": ").append(slowQuery.profile.toJson()).append("}");
+            separator = ",\n";
+        }
+        res.append("\n  ]\n}\n");
+        return res.toString();
+    }
+
+    public String toPrometheus() {
+        StringBuilder res = new StringBuilder();
+        Set<String> typed = new HashSet<>();
+        for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+            appendType(res, typed, counter.getKey(), "counter");
+            res.append(counter.getKey()).append(' ').append(counter.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, Double> gauge : new TreeMap<>(gauges).entrySet()) {
+            appendType(res, typed, gauge.getKey(), "gauge");
+            res.append(gauge.getKey()).append(' ').append(gauge.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            String name = entry.getKey();
+            Histogram histogram = entry.getValue();
+            appendType(res, typed, name, "summary");
+            for (double quantile : QUANTILES) {
+                res.append(addLabel(name, "quantile", Double.toString(quantile))).append(' ')
+                        .append(histogram.getValueAtQuantile(quantile)).append('\n');
+            }
+            res.append(addSuffix(name, "_sum")).append(' ').append(histogram.getSum()).append('\n');
+            res.append(addSuffix(name, "_count")).append(' ').append(histogram.getCount()).append('\n');
+        }
+        return res.toString();
+    }
+
+    /**
+     * Writes metrics to file: as JSON if file name ends with ".json", and in Prometheus text format otherwise.
+     */
+    public void saveToFile(String fileName) throws IOException {
+        Writer out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(new File(fileName))), "UTF-8");
+        out.write(fileName.endsWith(".json") ? toJson() : toPrometheus());
+        out.close();
+    }
+
+    static String jsonString(String str) {
+        StringBuilder res = new StringBuilder("\"");
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                res.append('\\').append(c);
+            } else if (c < ' ') {
+                res.append(String.format("\\u%04x", (int) c));
+            } else {
+                res.append(c);
+            }
+        }
+        return res.append('"').toString();
+    }
+
+    private static String quantileName(double quantile) {
+        String digits = Double.toString(quantile).substring(2);
+        return digits.length() == 1 ? digits + "0" : digits;
+    }
+
+    private static String baseName(String name) {
+        int labelsStart = name.indexOf('{');
+        return labelsStart == -1 ? name : name.substring(0, labelsStart);
+    }
+
+    private static String addLabel(String name, String label, String value) {
+        if (name.endsWith("}")) {
+            return name.substring(0, name.length() - 1) + "," + label + "=\"" + value + "\"}";
+        } else {
+            return withLabel(name, label, value);
+        }
+    }
+
+    private static String addSuffix(String name, String suffix) {
+        String baseName = baseName(name);
+        return baseName + suffix + name.substring(baseName.length());
+    }
+
+    private static void appendType(StringBuilder res, Set<String> typed, String name, String type) {
+        if (typed.add(baseName(name))) {
+            res.append("# TYPE ").append(baseName(name)).append(' ').append(type).append('\n');
+        }
+    }
+
+    public static class SlowQuery {
+        public final long time;
+        public final String query;
+        public final QueryProfile profile;
+
+        public SlowQuery(long time, String query, QueryProfile profile) {
+            this.time = time;
+            this.query = query;
+            this.profile = profile;
+        }
+    }
+}
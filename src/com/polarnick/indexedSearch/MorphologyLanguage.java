@@ -0,0 +1,80 @@
+package com.polarnick.indexedSearch;
+
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.WrongCharaterException;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Language with letters from given ranges and normal forms from Lucene morphology dictionary,
+ * that is loaded on first use.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public abstract class MorphologyLanguage implements Language {
+
+    private final String name;
+    private final List<Character> mins;
+    private final List<Character> maxs;
+    private volatile LuceneMorphology morphology;
+
+    protected MorphologyLanguage(String name, List<Character> mins, List<Character> maxs) {
+        if (mins.size() != maxs.size()) {
+            throw new IllegalArgumentException("Mins list must corresponds to maxs! Character mins[i] must has corresponding upper limit maxs[i]!");
+        }
+        this.name = name;
+        this.mins = mins;
+        this.maxs = maxs;
+    }
+
+    protected abstract LuceneMorphology createMorphology() throws IOException;
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isCorrectLetter(char c) {
+        for (int i = 0; i < mins.size(); i++) {
+            if (c >= mins.get(i) && c <= maxs.get(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public List<String> getNormalForms(String word) {
+        try {
+            return getMorphology().getNormalForms(word);
+        } catch (WrongCharaterException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private LuceneMorphology getMorphology() {
+        LuceneMorphology morphology = this.morphology;
+        if (morphology == null) {
+            synchronized (this) {
+                morphology = this.morphology;
+                if (morphology == null) {
+                    try {
+                        morphology = createMorphology();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Morphology of language " + name + " can't be loaded!", e);
+                    }
+                    this.morphology = morphology;
+                }
+            }
+        }
+        return morphology;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
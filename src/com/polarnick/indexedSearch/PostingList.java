@@ -0,0 +1,78 @@
+package com.polarnick.indexedSearch;
+
+/**
+ * Immutable postings of one normal form: files, where it occurs (increasing indexes in files table),
+ * and positions in each of them, encoded with {@link PostingsCodec}.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class PostingList {
+
+    private final int[] files;
+    private final int[] counts;
+    private final int[] offsets;
+    private final byte[] data;
+
+    /**
+     * @param offsets {@code offsets[i]} - start of encoded positions of {@code files[i]} in {@code data},
+     *                {@code offsets[files.length]} - end of data
+     */
+    public PostingList(int[] files, int[] counts, int[] offsets, byte[] data) {
+        this.files = files;
+        this.counts = counts;
+        this.offsets = offsets;
+        this.data = data;
+    }
+
+    public int getFilesCount() {
+        return files.length;
+    }
+
+    public int getFile(int i) {
+        return files[i];
+    }
+
+    public int getPositionsCount(int i) {
+        return counts[i];
+    }
+
+    public int getTotalPositionsCount() {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public int[] decodePositions(int i, PostingsCodec codec) {
+        int[] positions = new int[counts[i]];
+        codec.decode(data, offsets[i], counts[i], positions);
+        return positions;
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    int getDataLength(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    public long getMemoryBytes() {
+        final int arrayHeader = 16;
+        return arrayHeader * 4 + 4L * (files.length + counts.length + offsets.length) + data.length;
+    }
+
+    public static PostingList encode(int[] files, int[][] positions, PostingsCodec codec) {
+        int[] counts = new int[files.length];
+        int[] offsets = new int[files.length + 1];
+        ByteArrayWriter out = new ByteArrayWriter();
+        for (int i = 0; i < files.length; i++) {
+            offsets[i] = out.size();
+            counts[i] = positions[i].length;
+            codec.encode(positions[i], positions[i].length, out);
+        }
+        offsets[files.length] = out.size();
+        return new PostingList(files, counts, offsets, out.toByteArray());
+    }
+}
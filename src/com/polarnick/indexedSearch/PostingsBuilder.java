@@ -0,0 +1,157 @@
+package com.polarnick.indexedSearch;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects postings while indexing without locks: every thread appends to its own segment
+ * (append-only primitive buffers per normal form), and segments are merged into {@link PostingList}s by {@link #build}.
+ * {@link #add} can be called from any threads, {@link #build} - only after all of them are finished.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class PostingsBuilder {
+
+    private final Queue<Segment> segments = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Segment> threadSegment = new ThreadLocal<Segment>() {
+        @Override
+        protected Segment initialValue() {
+            Segment segment = new Segment();
+            segments.add(segment);
+            return segment;
+        }
+    };
+
+    public void add(String normForm, int doc, int position) {
+        threadSegment.get().add(normForm, doc, position);
+    }
+
+    /**
+     * Buffers are released while building, so builder can't be used after that.
+     *
+     * @param newDocs {@code newDocs[doc]} - final id of document with id {@code doc}, that was used while adding
+     */
+    public Map<String, PostingList> build(int[] newDocs, PostingsCodec codec) {
+        Map<String, List<TermBuffer>> buffersByNormForm = new HashMap<>();
+        for (Segment segment : segments) {
+            for (Map.Entry<String, TermBuffer> entry : segment.buffers.entrySet()) {
+                List<TermBuffer> buffers = buffersByNormForm.get(entry.getKey());
+                if (buffers == null) {
+                    buffers = new ArrayList<>(1);
+                    buffersByNormForm.put(entry.getKey(), buffers);
+                }
+                buffers.add(entry.getValue());
+            }
+            segment.buffers.clear();
+        }
+        segments.clear();
+
+        Map<String, PostingList> postings = new HashMap<>(buffersByNormForm.size());
+        Iterator<Map.Entry<String, List<TermBuffer>>> iterator = buffersByNormForm.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, List<TermBuffer>> entry = iterator.next();
+            postings.put(entry.getKey(), merge(entry.getValue(), newDocs, codec));
+            iterator.remove();
+        }
+        return postings;
+    }
+
+    /**
+     * Runs of positions from all buffers are sorted by final ids of documents,
+     * runs of the same document (if it was indexed by several threads) are concatenated.
+     */
+    private static PostingList merge(List<TermBuffer> buffers, int[] newDocs, PostingsCodec codec) {
+        int runsCount = 0;
+        for (TermBuffer buffer : buffers) {
+            runsCount += buffer.docs.size();
+        }
+        // final document << 32 | index of run
+        long[] runs = new long[runsCount];
+        TermBuffer[] runBuffers = new TermBuffer[runsCount];
+        int[] runIndexes = new int[runsCount];
+        int run = 0;
+        for (TermBuffer buffer : buffers) {
+            for (int i = 0; i < buffer.docs.size(); i++) {
+                runs[run] = (long) newDocs[buffer.docs.get(i)] << 32 | run;
+                runBuffers[run] = buffer;
+                runIndexes[run] = i;
+                run++;
+            }
+        }
+        Arrays.sort(runs);
+
+        IntArrayList docs = new IntArrayList(runsCount);
+        List<int[]> positions = new ArrayList<>(runsCount);
+        for (int i = 0; i < runsCount; ) {
+            int doc = (int) (runs[i] >>> 32);
+            int[] docPositions = runBuffers[(int) runs[i]].getPositions(runIndexes[(int) runs[i]]);
+            for (i++; i < runsCount && (int) (runs[i] >>> 32) == doc; i++) {
+                docPositions = concat(docPositions, runBuffers[(int) runs[i]].getPositions(runIndexes[(int) runs[i]]));
+            }
+            if (!isIncreasing(docPositions)) {
+                Arrays.sort(docPositions);
+            }
+            docs.add(doc);
+            positions.add(docPositions);
+        }
+        return PostingList.encode(docs.toArray(), positions.toArray(new int[positions.size()][]), codec);
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] res = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, res, a.length, b.length);
+        return res;
+    }
+
+    private static boolean isIncreasing(int[] values) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i - 1] >= values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Postings, added by one thread. Not thread-safe.
+     */
+    private static class Segment {
+        private final Map<String, TermBuffer> buffers = new HashMap<>();
+
+        void add(String normForm, int doc, int position) {
+            TermBuffer buffer = buffers.get(normForm);
+            if (buffer == null) {
+                buffer = new TermBuffer();
+                buffers.put(normForm, buffer);
+            }
+            buffer.add(doc, position);
+        }
+    }
+
+    /**
+     * Positions of one normal form in order of adding, split in runs of the same document.
+     */
+    private static class TermBuffer {
+        private final IntArrayList docs = new IntArrayList(1);
+        private final IntArrayList runStarts = new IntArrayList(1);
+        private final IntArrayList positions = new IntArrayList(4);
+
+        void add(int doc, int position) {
+            if (docs.isEmpty() || docs.get(docs.size() - 1) != doc) {
+                docs.add(doc);
+                runStarts.add(positions.size());
+            }
+            positions.add(position);
+        }
+
+        int[] getPositions(int run) {
+            int from = runStarts.get(run);
+            int to = run + 1 < runStarts.size() ? runStarts.get(run + 1) : positions.size();
+            int[] res = new int[to - from];
+            for (int i = from; i < to; i++) {
+                res[i - from] = positions.get(i);
+            }
+            return res;
+        }
+    }
+}
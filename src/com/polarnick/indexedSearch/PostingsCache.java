@@ -0,0 +1,87 @@
+package com.polarnick.indexedSearch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decoded positions of words, shared between queries of one batch.
+ * Every use of word should be announced with {@link #retain(String)} before queries are evaluated,
+ * then each word is decoded once - on its first {@link #get(String)}, and is evicted after its last {@link #release(String)}.
+ * So word stays decoded from the first to the last query, that uses it: queries are grouped only by one word
+ * (see {@link BatchSearcher}), and word of early and late queries takes memory for almost the whole batch -
+ * peak memory is traded for decoding every word once. Thread-safe after all words are retained.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class PostingsCache {
+
+    private final Index index;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = Metrics.global().counter(Metrics.withLabel("postings_cache_total", "result", "hit"));
+    private final LongAdder misses = Metrics.global().counter(Metrics.withLabel("postings_cache_total", "result", "miss"));
+
+    public PostingsCache(Index index) {
+        this.index = index;
+    }
+
+    public void retain(String word) {
+        Entry entry = entries.get(word);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(word, entry);
+        }
+        entry.uses.incrementAndGet();
+    }
+
+    /**
+     * @return the same as {@link Index#get(String)} (should not be modified)
+     */
+    public Map<Integer, int[]> get(String word) {
+        Entry entry = entries.get(word);
+        if (entry == null) {
+            misses.increment();
+            return index.get(word);
+        }
+        synchronized (entry) {
+            if (entry.positions == null) {
+                misses.increment();
+                entry.positions = index.get(word);
+            } else {
+                hits.increment();
+            }
+            return entry.positions;
+        }
+    }
+
+    /**
+     * @return true, if positions of word are decoded already, or word will be used by more than one query
+     * (otherwise decoding of positions only in some files is cheaper, than decoding of all of them for cache)
+     */
+    public boolean isShared(String word) {
+        Entry entry = entries.get(word);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            return entry.positions != null || entry.uses.get() > 1;
+        }
+    }
+
+    public void release(String word) {
+        Entry entry = entries.get(word);
+        if (entry != null && entry.uses.decrementAndGet() == 0) {
+            entries.remove(word);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static class Entry {
+        private final AtomicInteger uses = new AtomicInteger();
+        private Map<Integer, int[]> positions;
+    }
+}
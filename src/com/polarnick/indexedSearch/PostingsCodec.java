@@ -0,0 +1,148 @@
+package com.polarnick.indexedSearch;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Encoding of increasing positions of normal form in one file. All codecs except {@link #RAW} encode deltas
+ * between neighbouring positions. Count of positions is stored outside of encoded data.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public enum PostingsCodec {
+
+    /**
+     * Four bytes per position, no compression at all.
+     */
+    RAW {
+        @Override
+        public void encode(int[] positions, int count, ByteArrayWriter out) {
+            for (int i = 0; i < count; i++) {
+                int value = positions[i];
+                out.writeByte(value >>> 24);
+                out.writeByte(value >>> 16);
+                out.writeByte(value >>> 8);
+                out.writeByte(value);
+            }
+        }
+
+        @Override
+        public void decode(byte[] data, int offset, int count, int[] positions) {
+            for (int i = 0; i < count; i++, offset += 4) {
+                positions[i] = (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                        | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+            }
+        }
+    },
+
+    /**
+     * Deltas as variable-length integers: 7 bits per byte, high bit marks continuation.
+     */
+    VBYTE {
+        @Override
+        public void encode(int[] positions, int count, ByteArrayWriter out) {
+            int prev = 0;
+            for (int i = 0; i < count; i++) {
+                out.writeVInt(positions[i] - prev);
+                prev = positions[i];
+            }
+        }
+
+        @Override
+        public void decode(byte[] data, int offset, int count, int[] positions) {
+            int prev = 0;
+            for (int i = 0; i < count; i++) {
+                int b = data[offset++];
+                int delta = b & 0x7F;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = data[offset++];
+                    delta |= (b & 0x7F) << shift;
+                }
+                prev += delta;
+                positions[i] = prev;
+            }
+        }
+    },
+
+    /**
+     * Frame of reference: deltas are split into blocks of {@link #FOR_BLOCK_SIZE}, every block is prefixed with
+     * one byte of bits width and then all deltas of block are bit-packed with the same width (little-endian bit order).
+     * Delta with index {@code i} starts at bit {@code i * width} of block, so while decoding it is extracted
+     * from 8 bytes, read as one little-endian long from the byte, where it starts, without any branches per value
+     * (only the last values near the end of data, where 8 bytes can't be read, are assembled byte by byte).
+     */
+    FOR {
+        @Override
+        public void encode(int[] positions, int count, ByteArrayWriter out) {
+            int[] deltas = new int[FOR_BLOCK_SIZE];
+            int prev = 0;
+            for (int blockStart = 0; blockStart < count; blockStart += FOR_BLOCK_SIZE) {
+                int blockSize = Math.min(FOR_BLOCK_SIZE, count - blockStart);
+                int bitsMask = 0;
+                for (int i = 0; i < blockSize; i++) {
+                    deltas[i] = positions[blockStart + i] - prev;
+                    prev = positions[blockStart + i];
+                    bitsMask |= deltas[i];
+                }
+                int bits = 32 - Integer.numberOfLeadingZeros(bitsMask);
+                out.writeByte(bits);
+
+                long buffer = 0;
+                int bufferBits = 0;
+                for (int i = 0; i < blockSize; i++) {
+                    buffer |= (deltas[i] & 0xFFFFFFFFL) << bufferBits;
+                    bufferBits += bits;
+                    while (bufferBits >= 8) {
+                        out.writeByte((int) buffer);
+                        buffer >>>= 8;
+                        bufferBits -= 8;
+                    }
+                }
+                if (bufferBits > 0) {
+                    out.writeByte((int) buffer);
+                }
+            }
+        }
+
+        @Override
+        public void decode(byte[] data, int offset, int count, int[] positions) {
+            ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            int prev = 0;
+            for (int blockStart = 0; blockStart < count; blockStart += FOR_BLOCK_SIZE) {
+                int blockSize = Math.min(FOR_BLOCK_SIZE, count - blockStart);
+                int bits = data[offset++];
+                long mask = (1L << bits) - 1;
+
+                // count of values, that can be read with whole long (value takes at most 7 + 32 bits of it)
+                int lastLongOffset = data.length - 8 - offset;
+                int fastCount = lastLongOffset < 0 ? 0
+                        : bits == 0 ? blockSize : (int) Math.min(blockSize, lastLongOffset * 8L / bits + 1);
+                int i = 0;
+                for (; i < fastCount; i++) {
+                    int bit = i * bits;
+                    prev += (int) (buffer.getLong(offset + (bit >>> 3)) >>> (bit & 7) & mask);
+                    positions[blockStart + i] = prev;
+                }
+                for (; i < blockSize; i++) {
+                    int bit = i * bits;
+                    long value = 0;
+                    for (int b = bit >>> 3, shift = 0; b < (bit + bits + 7) >>> 3; b++, shift += 8) {
+                        value |= (data[offset + b] & 0xFFL) << shift;
+                    }
+                    prev += (int) (value >>> (bit & 7) & mask);
+                    positions[blockStart + i] = prev;
+                }
+                offset += (blockSize * bits + 7) >>> 3;
+            }
+        }
+    };
+
+    private static final int FOR_BLOCK_SIZE = 128;
+
+    public abstract void encode(int[] positions, int count, ByteArrayWriter out);
+
+    /**
+     * @param positions array of at least {@code count} length, to decode positions into
+     */
+    public abstract void decode(byte[] data, int offset, int count, int[] positions);
+}
@@ -0,0 +1,182 @@
+package com.polarnick.indexedSearch;
+
+import java.io.*;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures, how throughput of putting tokens to index scales with count of threads:
+ * <ul>
+ * <li>{@link Index#put} - with analysis of tokens by languages,</li>
+ * <li>{@link PostingsBuilder#add} - only storing of postings (tokens are used as normal forms),</li>
+ * <li>the same postings stored in nested concurrent maps with synchronized lists of positions
+ * (as index stored them before {@link PostingsBuilder}) - for comparison.</li>
+ * </ul>
+ * Every file is one document, documents are distributed between threads like in {@link Indexer}.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class PutBenchmark {
+
+    private static final int ITERATIONS = 3;
+    private static final int MODES_COUNT = 3;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.out.println("Usage arguments: [-tN] [-l languages] [files or dirs]*");
+            System.out.println("Where '-tN' - maximal count of threads (default: count of processors)");
+            System.out.println("Where '-l languages' - comma-separated languages of documents (default: RU,EN)");
+            return;
+        }
+        int maxThreadsCount = Runtime.getRuntime().availableProcessors();
+        List<Language> langs = Arrays.asList(Languages.RU, Languages.EN);
+        final List<File> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("-t")) {
+                maxThreadsCount = Integer.parseInt(args[i].substring(2));
+            } else if (args[i].equals("-l") && i + 1 < args.length) {
+                langs = new ArrayList<>();
+                for (String name : args[++i].split(",")) {
+                    langs.add(Languages.get(name.trim()));
+                }
+            } else if (new File(args[i]).isDirectory()) {
+                Files.walkFileTree(new File(args[i]).toPath(), new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        files.add(file.toFile());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } else {
+                files.add(new File(args[i]));
+            }
+        }
+
+        ScriptDetector scriptDetector = new ScriptDetector(langs);
+        List<String[]> docs = new ArrayList<>();
+        long tokensCount = 0;
+        for (File file : files) {
+            String[] tokens = readTokens(file, scriptDetector);
+            docs.add(tokens);
+            tokensCount += tokens.length;
+        }
+        System.out.println("Documents: " + docs.size() + ", tokens: " + tokensCount);
+
+        for (int mode = 0; mode < MODES_COUNT; mode++) {
+            run(mode, docs, langs, maxThreadsCount);
+        }
+        List<String> report = new ArrayList<>();
+        report.add(String.format("%-8s %22s %22s %22s", "threads", "Index.put, M/s", "builder, M/s", "concurrent maps, M/s"));
+        double[] firstSpeeds = null;
+        for (int threadsCount = 1; threadsCount <= maxThreadsCount; threadsCount = nextThreadsCount(threadsCount, maxThreadsCount)) {
+            double[] speeds = new double[MODES_COUNT];
+            for (int mode = 0; mode < speeds.length; mode++) {
+                for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                    long nanos = run(mode, docs, langs, threadsCount);
+                    speeds[mode] = Math.max(speeds[mode], tokensCount * 1000.0 / Math.max(1, nanos));
+                }
+            }
+            if (firstSpeeds == null) {
+                firstSpeeds = speeds;
+            }
+            report.add(String.format("%-8d %13.2f (x%5.2f) %13.2f (x%5.2f) %13.2f (x%5.2f)", threadsCount,
+                    speeds[0], speeds[0] / firstSpeeds[0], speeds[1], speeds[1] / firstSpeeds[1], speeds[2], speeds[2] / firstSpeeds[2]));
+            System.out.println(report.get(report.size() - 1));
+        }
+        for (String line : report) {
+            System.out.println(line);
+        }
+    }
+
+    private static int nextThreadsCount(int threadsCount, int maxThreadsCount) {
+        return threadsCount < maxThreadsCount && threadsCount * 2 > maxThreadsCount ? maxThreadsCount : threadsCount * 2;
+    }
+
+    private static String[] readTokens(File file, ScriptDetector scriptDetector) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                int wordStart = -1;
+                for (int i = 0; i <= line.length(); i++) {
+                    boolean isLetter = i < line.length() && scriptDetector.isLetter(line.charAt(i));
+                    if (isLetter && wordStart == -1) {
+                        wordStart = i;
+                    } else if (!isLetter && wordStart != -1) {
+                        tokens.add(line.substring(wordStart, i).toLowerCase());
+                        wordStart = -1;
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    /**
+     * @return nanoseconds spent to put all tokens of all documents
+     */
+    private static long run(int mode, List<String[]> docs, List<Language> langs, int threadsCount) throws InterruptedException {
+        final Index index = new Index(langs);
+        final PostingsBuilder builder = new PostingsBuilder();
+        final ConcurrentMap<String, ConcurrentMap<Integer, List<Integer>>> maps = new ConcurrentHashMap<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < docs.size(); i++) {
+            final int doc = index.addDocument(Integer.toString(i), 0, 0);
+            final String[] tokens = docs.get(i);
+            final int finalMode = mode;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int position = 0; position < tokens.length; position++) {
+                        if (finalMode == 0) {
+                            index.put(tokens[position], doc, position + 1);
+                        } else if (finalMode == 1) {
+                            builder.add(tokens[position], doc, position + 1);
+                        } else {
+                            putToMaps(maps, tokens[position], doc, position + 1);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threadsCount);
+        long startTime = System.nanoTime();
+        executor.invokeAll(tasks);
+        long nanos = System.nanoTime() - startTime;
+        executor.shutdown();
+        return nanos;
+    }
+
+    private static void putToMaps(ConcurrentMap<String, ConcurrentMap<Integer, List<Integer>>> maps,
+                                  String normForm, int doc, int position) {
+        ConcurrentMap<Integer, List<Integer>> values = maps.get(normForm);
+        if (values == null) {
+            values = new ConcurrentHashMap<>();
+            ConcurrentMap<Integer, List<Integer>> oldSet = maps.putIfAbsent(normForm, values);
+            if (oldSet != null) {
+                values = oldSet;
+            }
+        }
+        List<Integer> indexes = values.get(doc);
+        if (indexes == null) {
+            indexes = Collections.synchronizedList(new ArrayList<Integer>());
+            List<Integer> oldList = values.putIfAbsent(doc, indexes);
+            if (oldList != null) {
+                indexes = oldList;
+            }
+        }
+        indexes.add(position);
+    }
+}
@@ -0,0 +1,142 @@
+package com.polarnick.indexedSearch;
+
+import com.sun.istack.internal.Nullable;
+
+import java.util.Set;
+
+/**
+ * Limits of evaluation of one query: deadline, budget of occurrences (all intermediate results of query nodes are
+ * counted, so it bounds memory, that query can take) and maximal count of returned matches.
+ * {@link Searcher} checks them cooperatively during evaluation, so query can be cancelled from any thread
+ * with {@link #cancel()}. Context should be used for one query only.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class QueryContext {
+
+    public enum Status {
+        /**
+         * All matches were found.
+         */
+        COMPLETE,
+        /**
+         * All matches were found, but only some of them (limited by max results count) are returned.
+         */
+        TRUNCATED,
+        /**
+         * Evaluation was stopped, because intermediate results exceeded budget of occurrences.
+         * Matches, that were found before that, are returned (the same for {@link #TIMED_OUT} and {@link #CANCELLED}).
+         */
+        BUDGET_EXCEEDED,
+        TIMED_OUT,
+        CANCELLED
+    }
+
+    public static final long NO_LIMIT = 0;
+
+    // deadline and cancellation are checked once per so many steps of evaluation
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final long deadlineNanos;
+    private final long occurrencesBudget;
+    private final long maxResults;
+    private volatile boolean cancelled;
+
+    private long occurrences;
+    private int steps;
+
+    public QueryContext() {
+        this(NO_LIMIT, NO_LIMIT, NO_LIMIT);
+    }
+
+    /**
+     * @param timeoutMillis     time for evaluation, counted from creation of context
+     * @param occurrencesBudget maximal count of occurrences, produced by all nodes of query
+     * @param maxResults        maximal count of returned matches
+     *                          (each of limits can be {@link #NO_LIMIT})
+     */
+    public QueryContext(long timeoutMillis, long occurrencesBudget, long maxResults) {
+        this.deadlineNanos = timeoutMillis == NO_LIMIT ? Long.MAX_VALUE : System.nanoTime() + timeoutMillis * 1000000;
+        this.occurrencesBudget = occurrencesBudget == NO_LIMIT ? Long.MAX_VALUE : occurrencesBudget;
+        this.maxResults = maxResults == NO_LIMIT ? Long.MAX_VALUE : maxResults;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    long getMaxResults() {
+        return maxResults;
+    }
+
+    long getOccurrencesCount() {
+        return occurrences;
+    }
+
+    /**
+     * Should be called on every step of evaluation loops.
+     *
+     * @throws AbortedException if query was cancelled or deadline has passed
+     */
+    void checkpoint() {
+        if (++steps == CHECK_INTERVAL) {
+            steps = 0;
+            check();
+        }
+    }
+
+    /**
+     * Should be called for every produced occurrence.
+     *
+     * @throws AbortedException if budget of occurrences was exceeded, query was cancelled or deadline has passed
+     */
+    void addOccurrence() {
+        if (++occurrences > occurrencesBudget) {
+            throw new AbortedException(Status.BUDGET_EXCEEDED);
+        }
+        checkpoint();
+    }
+
+    void check() {
+        if (cancelled) {
+            throw new AbortedException(Status.CANCELLED);
+        }
+        if (deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos > 0) {
+            throw new AbortedException(Status.TIMED_OUT);
+        }
+    }
+
+    static class AbortedException extends RuntimeException {
+
+        private static final long serialVersionUID = 2391;
+
+        private final Status status;
+        private Set<Searcher.Occurance> partialMatches;
+
+        AbortedException(Status status) {
+            super("Query evaluation was stopped: " + status, null, false, false);
+            this.status = status;
+        }
+
+        Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return matches of query node, where evaluation was stopped, that were found before that
+         * (null, if found occurrences are not matches of node yet)
+         */
+        @Nullable
+        Set<Searcher.Occurance> getPartialMatches() {
+            return partialMatches;
+        }
+
+        void setPartialMatches(@Nullable Set<Searcher.Occurance> partialMatches) {
+            this.partialMatches = partialMatches;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.polarnick.indexedSearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Execution profile of one node of parsed query: operator type, sub-expression, time spent (including children)
+ * and size of produced result.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class QueryProfile {
+
+    private final String expression;
+    private final List<QueryProfile> children = new ArrayList<>();
+    private String operator = "?";
+    private long nanos;
+    private int resultsCount;
+
+    public QueryProfile(String expression) {
+        this.expression = expression;
+    }
+
+    public void addChild(QueryProfile child) {
+        children.add(child);
+    }
+
+    public void finish(String operator, long nanos, int resultsCount) {
+        this.operator = operator;
+        this.nanos = nanos;
+        this.resultsCount = resultsCount;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public String getOperator() {
+        return operator;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public int getResultsCount() {
+        return resultsCount;
+    }
+
+    public List<QueryProfile> getChildren() {
+        return children;
+    }
+
+    public String toJson() {
+        StringBuilder res = new StringBuilder();
+        res.append("{\"op\":\"").append(operator).append("\"");
+        res.append(",\"expr\":").append(Metrics.jsonString(expression));
+        res.append(",\"micros\":").append(nanos / 1000);
+        res.append(",\"results\":").append(resultsCount);
+        if (!children.isEmpty()) {
+            res.append(",\"children\":[");
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) {
+                    res.append(',');
+                }
+                res.append(children.get(i).toJson());
+            }
+            res.append(']');
+        }
+        res.append('}');
+        return res.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder res = new StringBuilder();
+        append(res, "");
+        return res.toString();
+    }
+
+    private void append(StringBuilder res, String indent) {
+        res.append(indent).append(operator).append(" '").append(expression).append("': ")
+                .append(nanos / 1000).append(" us, ").append(resultsCount).append(" results\n");
+        for (QueryProfile child : children) {
+            child.append(res, indent + "  ");
+        }
+    }
+}
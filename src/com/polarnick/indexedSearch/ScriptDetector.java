@@ -0,0 +1,50 @@
+package com.polarnick.indexedSearch;
+
+import java.util.List;
+
+/**
+ * Table of letters of given languages, that detects with one lookup per character,
+ * which languages a token can belong to, so token is analyzed only by morphologies of these languages.
+ *
+ * @author Polyarnyi Nikolay - PolarNick239
+ */
+public class ScriptDetector {
+
+    public static final int MAX_LANGUAGES_COUNT = 32;
+
+    private final List<Language> langs;
+    private final int[] langsByChar = new int[Character.MAX_VALUE + 1];
+
+    public ScriptDetector(List<Language> langs) {
+        if (langs.size() > MAX_LANGUAGES_COUNT) {
+            throw new IllegalArgumentException("Too many languages: " + langs.size() + " (maximum: " + MAX_LANGUAGES_COUNT + ")");
+        }
+        this.langs = langs;
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            for (int i = 0; i < langs.size(); i++) {
+                if (langs.get(i).isCorrectLetter((char) c)) {
+                    langsByChar[c] |= 1 << i;
+                }
+            }
+        }
+    }
+
+    public boolean isLetter(char c) {
+        return langsByChar[c] != 0;
+    }
+
+    /**
+     * @return bit mask of languages, that have all characters of token as letters: i-th bit for i-th language
+     */
+    public int detect(String token) {
+        int mask = -1;
+        for (int i = 0; i < token.length() && mask != 0; i++) {
+            mask &= langsByChar[token.charAt(i)];
+        }
+        return token.isEmpty() ? 0 : mask;
+    }
+
+    public List<Language> getLanguages() {
+        return langs;
+    }
+}
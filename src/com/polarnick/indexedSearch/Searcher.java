@@ -5,10 +5,8 @@ import com.sun.istack.internal.Nullable;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Polyarnyi Nikolay - PolarNick239
@@ -16,14 +14,44 @@ import java.util.Set;
 public class Searcher {
 
     private final Index index;
+    private final long timeoutMillis;
+    private final long occurrencesBudget;
+    private final long maxResults;
+    private final PostingsCache postingsCache;
+    private final Set<QueryContext> running = Collections.newSetFromMap(new ConcurrentHashMap<QueryContext, Boolean>());
 
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage arguments: indexFile");
+        if (args.length == 0) {
+            System.out.println("Usage arguments: indexFile [-m metricsFileName] [-slow N] [-t N] [-b N] [-r N]");
+            System.out.println("Where '-m metricsFileName' - file to save metrics in on exit (JSON if name ends with '.json', Prometheus text format otherwise)");
+            System.out.println("Where '-slow N' - queries longer than N milliseconds are logged with their execution profile");
+            System.out.println("Where '-t N' - evaluation of query is stopped after N milliseconds");
+            System.out.println("Where '-b N' - evaluation of query is stopped after N occurrences produced by all its nodes");
+            System.out.println("Where '-r N' - only N matches of query are printed");
             return;
         }
+        String metricsFilename = null;
+        long timeoutMillis = QueryContext.NO_LIMIT;
+        long occurrencesBudget = QueryContext.NO_LIMIT;
+        long maxResults = QueryContext.NO_LIMIT;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-m") && i + 1 < args.length) {
+                metricsFilename = args[++i];
+            } else if (args[i].equals("-slow") && i + 1 < args.length) {
+                Metrics.global().setSlowQueryThresholdMicros(Long.parseLong(args[++i]) * 1000);
+            } else if (args[i].equals("-t") && i + 1 < args.length) {
+                timeoutMillis = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-b") && i + 1 < args.length) {
+                occurrencesBudget = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-r") && i + 1 < args.length) {
+                maxResults = Long.parseLong(args[++i]);
+            } else {
+                System.out.println("Unknown argument: '" + args[i] + "'");
+                return;
+            }
+        }
         try {
-            Searcher searcher = new Searcher(Index.<String>loadFromFile(args[0]));
+            Searcher searcher = new Searcher(Index.<String>loadFromFile(args[0]), timeoutMillis, occurrencesBudget, maxResults);
             BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
             System.out.println("You can use english letters 'a'-'z', 'A'-'Z', russian letters 'а'-'я', 'А'-'Я'," +
                     " brackets '(' and ')', logical operators ' AND ', ' OR ' and distance operator ' /N ', ' /+N ', ' /-N '.");
@@ -31,11 +59,18 @@ public class Searcher {
             String line = in.readLine();
             while (line != null && !line.isEmpty()) {
                 try {
-                    Set<Occurance> matches = searcher.find(line);
-                    if (matches.size() == 0) {
+                    SearchResult result = searcher.search(line);
+                    Set<Occurance> matches = result.getMatches();
+                    if (result.getStatus() != QueryContext.Status.COMPLETE
+                            && result.getStatus() != QueryContext.Status.TRUNCATED) {
+                        System.out.println("Query was stopped: " + result.getStatus() + ", "
+                                + matches.size() + " matches were found before that: " + result);
+                    } else if (matches.size() == 0) {
                         System.out.println("No matches!");
+                    } else if (result.getStatus() == QueryContext.Status.TRUNCATED) {
+                        System.out.println(matches.size() + " first matches: " + result);
                     } else {
-                        System.out.println(matches.size() + " matches: " + matches);
+                        System.out.println(matches.size() + " matches: " + result);
                     }
                 } catch (IllegalArgumentException e) {
                     System.out.println("Incorrect query!");
@@ -43,15 +78,42 @@ public class Searcher {
                 System.out.println("Enter query:");
                 line = in.readLine();
             }
+            if (metricsFilename != null) {
+                Metrics.global().saveToFile(metricsFilename);
+                System.out.println("Metrics were saved to file: " + metricsFilename);
+            }
+        } catch (CorruptIndexException e) {
+            System.out.println("Error while interpreting file: " + e);
         } catch (IOException e) {
             System.out.println("Error while reading file: " + e);
-        } catch (ClassNotFoundException e) {
-            System.out.println("Error while interpreting file: " + e);
         }
     }
 
     public Searcher(Index index) {
+        this(index, QueryContext.NO_LIMIT, QueryContext.NO_LIMIT, QueryContext.NO_LIMIT);
+    }
+
+    /**
+     * Limits are applied to every query, evaluated with {@link #search(String)} (each of them can be {@link QueryContext#NO_LIMIT}).
+     *
+     * @param timeoutMillis     time for evaluation of query
+     * @param occurrencesBudget maximal count of occurrences, produced by all nodes of query
+     * @param maxResults        maximal count of returned matches
+     */
+    public Searcher(Index index, long timeoutMillis, long occurrencesBudget, long maxResults) {
+        this(index, timeoutMillis, occurrencesBudget, maxResults, null);
+    }
+
+    /**
+     * @param postingsCache positions of words are taken from this cache instead of decoding them from index
+     */
+    public Searcher(Index index, long timeoutMillis, long occurrencesBudget, long maxResults,
+                    @Nullable PostingsCache postingsCache) {
         this.index = index;
+        this.timeoutMillis = timeoutMillis;
+        this.occurrencesBudget = occurrencesBudget;
+        this.maxResults = maxResults;
+        this.postingsCache = postingsCache;
     }
 
     //Expr = AndExpr | OrExpr | (Expr) | Term | DistExpr
@@ -62,7 +124,27 @@ public class Searcher {
     private static final String OR_OPERAND = " OR ";
     private static final String DIST_OPERATOR = " /";
 
+    private static final String QUERY_LATENCY = "query_latency_micros";
+
     public Set<Occurance> find(String expression) {
+        return search(expression).getMatches();
+    }
+
+    /**
+     * Evaluates query with limits of this searcher.
+     */
+    public SearchResult search(String expression) {
+        return search(expression, new QueryContext(timeoutMillis, occurrencesBudget, maxResults));
+    }
+
+    /**
+     * Evaluates query with given limits. Evaluation can be stopped from another thread by {@link QueryContext#cancel()}.
+     *
+     * @return matches and status of evaluation, if evaluation was stopped - matches, that were found before that
+     * (occurrences of words and whole branches of OR, intermediate results of AND and distance operators are dropped)
+     * @throws IllegalArgumentException if query is incorrect
+     */
+    public SearchResult search(String expression, QueryContext context) {
         int[] pairBracket = new int[expression.length()];
         int[] opens = new int[expression.length()];
         int lastOpen = -1;
@@ -86,157 +168,430 @@ public class Searcher {
                 throw new IllegalArgumentException("Incorrect symbol '" + curC + "'at position " + (i + 1));
             }
         }
-        return find(pairBracket, expression, 0, expression.length());
+        Metrics.global().counter("queries_total").increment();
+        QueryProfile profile = new QueryProfile(expression);
+        long startTime = System.nanoTime();
+        running.add(context);
+        Set<Occurance> result;
+        QueryContext.Status status;
+        try {
+            context.check();
+            result = find(pairBracket, expression, 0, expression.length(), profile, context);
+            status = QueryContext.Status.COMPLETE;
+            if (result.size() > context.getMaxResults()) {
+                result = truncate(result, context.getMaxResults());
+                status = QueryContext.Status.TRUNCATED;
+            }
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            // operators are parsed while evaluation, so malformed operator fails there
+            throw new IllegalArgumentException("Incorrect query", e);
+        } catch (QueryContext.AbortedException e) {
+            result = e.getPartialMatches() != null ? e.getPartialMatches() : Collections.<Occurance>emptySet();
+            if (result.size() > context.getMaxResults()) {
+                result = truncate(result, context.getMaxResults());
+            }
+            status = e.getStatus();
+        } finally {
+            running.remove(context);
+        }
+        long nanos = System.nanoTime() - startTime;
+        profile.finish("query", nanos, result.size());
+        Metrics.global().histogram(Metrics.withLabel(QUERY_LATENCY, "op", "query")).record(nanos / 1000);
+        if (status != QueryContext.Status.COMPLETE) {
+            Metrics.global().counter(Metrics.withLabel("stopped_queries_total", "status", status.name().toLowerCase())).increment();
+        }
+        Metrics.global().logIfSlow(expression, profile);
+        return new SearchResult(index.getDocuments(), result, status, context.getOccurrencesCount());
     }
 
-    private Set<Occurance> find(int[] pairBracket, String str, int from, int to) {
-        Set<Occurance> result = findAnd(pairBracket, str, from, to);
-        if (result != null) {
-            return result;
+    /**
+     * Cancels all queries, which are being evaluated at the moment.
+     */
+    public void cancelAll() {
+        for (QueryContext context : running) {
+            context.cancel();
         }
-        result = findOr(pairBracket, str, from, to);
-        if (result != null) {
-            return result;
+    }
+
+    public int getRunningQueriesCount() {
+        return running.size();
+    }
+
+    private static Set<Occurance> truncate(Set<Occurance> matches, long count) {
+        Set<Occurance> result = new HashSet<>();
+        for (Occurance occurance : matches) {
+            if (result.size() == count) {
+                break;
+            }
+            result.add(occurance);
         }
-        result = findDist(pairBracket, str, from, to);
-        if (result != null) {
+        return result;
+    }
+
+    private Set<Occurance> find(int[] pairBracket, String str, int from, int to, QueryProfile parent, QueryContext context) {
+        QueryProfile node = new QueryProfile(str.substring(from, to));
+        long startTime = System.nanoTime();
+        String operator = "aborted";
+        Set<Occurance> result = null;
+        try {
+            if ((result = findAnd(pairBracket, str, from, to, node, context)) != null) {
+                operator = "and";
+            } else if ((result = findOr(pairBracket, str, from, to, node, context)) != null) {
+                operator = "or";
+            } else if ((result = findDist(pairBracket, str, from, to, node, context)) != null) {
+                operator = "dist";
+            } else if (str.charAt(from) == '(' && str.charAt(to - 1) == ')') {
+                operator = "group";
+                result = find(pairBracket, str, from + 1, to - 1, node, context);
+            } else {
+                operator = "term";
+                result = findTerm(str, from, to, context);
+            }
             return result;
+        } catch (QueryContext.AbortedException e) {
+            result = e.getPartialMatches();
+            throw e;
+        } finally {
+            long nanos = System.nanoTime() - startTime;
+            node.finish(operator, nanos, result == null ? 0 : result.size());
+            parent.addChild(node);
+            Metrics.global().histogram(Metrics.withLabel(QUERY_LATENCY, "op", operator)).record(nanos / 1000);
         }
-        if (str.charAt(from) == '(' && str.charAt(to - 1) == ')') {
-            result = find(pairBracket, str, from + 1, to - 1);
-        } else {
-            for (int i = from; i < to; i++) {
-                char curC = str.charAt(i);
-                if (!index.isCorrectLetter(curC)) {
-                    throw new IllegalArgumentException("Incorrect symbol '" + curC + "'at position " + (i + 1));
-                }
+    }
+
+    private Set<Occurance> findTerm(String str, int from, int to, QueryContext context) {
+        for (int i = from; i < to; i++) {
+            char curC = str.charAt(i);
+            if (!index.isCorrectLetter(curC)) {
+                throw new IllegalArgumentException("Incorrect symbol '" + curC + "'at position " + (i + 1));
             }
-            Map<String, List<Integer>> filePoses = index.get(str.substring(from, to));
-            result = new HashSet<>();
-            for (String file : filePoses.keySet()) {
-                for (int index : filePoses.get(file)) {
-                    result.add(new Occurance(file, index, index));
+        }
+        String word = str.substring(from, to);
+        return toOccurances(postingsCache != null ? postingsCache.get(word) : index.get(word), 0, context);
+    }
+
+    /**
+     * @return words of query (the same strings, that are searched in index during its evaluation)
+     */
+    List<String> getWords(String expression) {
+        List<String> words = new ArrayList<>();
+        for (String token : expression.split("[ ()]+")) {
+            if (!token.equals(AND_OPERAND.trim()) && !token.equals(OR_OPERAND.trim()) && isWord(token, 0, token.length())) {
+                words.add(token);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @param length distance between first and last word of every occurrence
+     */
+    private static Set<Occurance> toOccurances(Map<Integer, int[]> docPoses, int length, QueryContext context) {
+        Set<Occurance> result = new HashSet<>();
+        try {
+            for (Map.Entry<Integer, int[]> entry : docPoses.entrySet()) {
+                for (int index : entry.getValue()) {
+                    context.addOccurrence();
+                    result.add(new Occurance(entry.getKey(), index, index + length));
                 }
             }
+        } catch (QueryContext.AbortedException e) {
+            e.setPartialMatches(result);
+            throw e;
         }
         return result;
     }
 
     @Nullable
-    private Set<Occurance> findAnd(int[] pairBracket, String str, int from, int to) {
-        Set<Occurance> result = null;
-        int curFrom = from;
+    private Set<Occurance> findAnd(int[] pairBracket, String str, int from, int to, QueryProfile node, QueryContext context) {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(from);
         for (int i = from; i < to; i++) {
             char curC = str.charAt(i);
             if (curC == '(') {
                 i = pairBracket[i];
             } else if (isContainSubstringAt(str, i, AND_OPERAND)) {
-                Set<Occurance> set = find(pairBracket, str, curFrom, i);
-                if (result == null) {
-                    result = set;
-                } else {
-                    Set<Occurance> retained = new HashSet<>();
-                    for (Occurance old : result) {
-                        for (Occurance that : set) {
-                            if (old.file.equals(that.file)) {
-                                retained.add(new Occurance(old.file, Math.min(old.from, that.from), Math.max(old.to, that.to)));
-                            }
-                        }
-                    }
-                    result = retained;
-                }
+                bounds.add(i);
+                bounds.add(i + AND_OPERAND.length());
+                i += AND_OPERAND.length() - 1;
+            }
+        }
+        bounds.add(to);
+        if (bounds.size() == 2) {
+            return null;
+        }
+        try {
+            if (areWords(str, bounds)) {
+                return findAndOfWords(str, bounds, node, context);
+            }
+
+            Set<Occurance> result = null;
+            for (int i = 0; i < bounds.size(); i += 2) {
+                Set<Occurance> set = find(pairBracket, str, bounds.get(i), bounds.get(i + 1), node, context);
+                result = result == null ? set : join(result, set, context);
                 if (result.size() == 0) {
                     return result;
                 }
-                curFrom = i + AND_OPERAND.length();
-                i = curFrom - 1;
             }
+            return result;
+        } catch (QueryContext.AbortedException e) {
+            // occurrences of operands are not matches of AND
+            e.setPartialMatches(null);
+            throw e;
         }
-        if (result != null) {
-            Set<Occurance> lastSet = find(pairBracket, str, curFrom, to);
-            Set<Occurance> retained = new HashSet<>();
-            for (Occurance old : result) {
-                for (Occurance that : lastSet) {
-                    if (old.file.equals(that.file)) {
-                        retained.add(new Occurance(old.file, Math.min(old.from, that.from), Math.max(old.to, that.to)));
-                    }
-                }
+    }
+
+    /**
+     * All operands of AND are words, so only files, where all of them occur (intersection of files bitmaps),
+     * have to be decoded. In batch, positions of word, that are shared with other queries, are taken from
+     * {@link PostingsCache} (and filtered by these files), other words are decoded only in these files.
+     */
+    private Set<Occurance> findAndOfWords(String str, List<Integer> bounds, QueryProfile node, QueryContext context) {
+        BitSet files = null;
+        boolean frequentWords = false;
+        for (int i = 0; i < bounds.size(); i += 2) {
+            String word = str.substring(bounds.get(i), bounds.get(i + 1));
+            frequentWords |= index.isFrequent(word);
+            BitSet wordFiles = index.getFilesBitmap(word);
+            if (files == null) {
+                files = wordFiles;
+            } else {
+                files.and(wordFiles);
             }
-            result = retained;
+        }
+        if (frequentWords) {
+            Metrics.global().counter(Metrics.withLabel("routed_queries_total", "route", "files_bitmap")).increment();
+        }
+        Set<Occurance> result = null;
+        for (int i = 0; i < bounds.size(); i += 2) {
+            String word = str.substring(bounds.get(i), bounds.get(i + 1));
+            QueryProfile wordNode = new QueryProfile(word);
+            long startTime = System.nanoTime();
+            Map<Integer, int[]> positions;
+            if (postingsCache != null && postingsCache.isShared(word)) {
+                positions = filter(postingsCache.get(word), files);
+            } else {
+                positions = index.get(word, files);
+            }
+            Set<Occurance> set = toOccurances(positions, 0, context);
+            wordNode.finish("term", System.nanoTime() - startTime, set.size());
+            node.addChild(wordNode);
+            result = result == null ? set : join(result, set, context);
         }
         return result;
     }
 
+    private static Map<Integer, int[]> filter(Map<Integer, int[]> positions, BitSet docs) {
+        Map<Integer, int[]> res = new HashMap<>();
+        for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) {
+            int[] docPositions = positions.get(doc);
+            if (docPositions != null) {
+                res.put(doc, docPositions);
+            }
+        }
+        return res;
+    }
+
+    private static Set<Occurance> join(Set<Occurance> left, Set<Occurance> right, QueryContext context) {
+        Map<Integer, List<Occurance>> rightByDoc = new HashMap<>();
+        for (Occurance that : right) {
+            List<Occurance> inDoc = rightByDoc.get(that.doc);
+            if (inDoc == null) {
+                inDoc = new ArrayList<>();
+                rightByDoc.put(that.doc, inDoc);
+            }
+            inDoc.add(that);
+        }
+        Set<Occurance> retained = new HashSet<>();
+        for (Occurance old : left) {
+            List<Occurance> inDoc = rightByDoc.get(old.doc);
+            if (inDoc != null) {
+                for (Occurance that : inDoc) {
+                    context.addOccurrence();
+                    retained.add(new Occurance(old.doc, Math.min(old.from, that.from), Math.max(old.to, that.to)));
+                }
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * @param bounds pairs of start and end of operands
+     */
+    private boolean areWords(String str, List<Integer> bounds) {
+        for (int i = 0; i < bounds.size(); i += 2) {
+            if (!isWord(str, bounds.get(i), bounds.get(i + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isWord(String str, int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (!index.isCorrectLetter(str.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Nullable
-    private Set<Occurance> findOr(int[] pairBracket, String str, int from, int to) {
+    private Set<Occurance> findOr(int[] pairBracket, String str, int from, int to, QueryProfile node, QueryContext context) {
         Set<Occurance> result = null;
         int curFrom = from;
-        for (int i = from; i < to; i++) {
-            char curC = str.charAt(i);
-            if (curC == '(') {
-                i = pairBracket[i];
-            } else if (isContainSubstringAt(str, i, OR_OPERAND)) {
-                Set<Occurance> set = find(pairBracket, str, curFrom, i);
-                if (result == null) {
-                    result = set;
-                } else {
-                    result.addAll(set);
+        try {
+            for (int i = from; i < to; i++) {
+                char curC = str.charAt(i);
+                if (curC == '(') {
+                    i = pairBracket[i];
+                } else if (isContainSubstringAt(str, i, OR_OPERAND)) {
+                    Set<Occurance> set = find(pairBracket, str, curFrom, i, node, context);
+                    if (result == null) {
+                        result = set;
+                    } else {
+                        result.addAll(set);
+                    }
+                    curFrom = i + OR_OPERAND.length();
+                    i = curFrom - 1;
                 }
-                curFrom = i + OR_OPERAND.length();
-                i = curFrom - 1;
             }
-        }
-        if (result != null) {
-            Set<Occurance> lastSet = find(pairBracket, str, curFrom, to);
-            result.addAll(lastSet);
+            if (result != null) {
+                Set<Occurance> lastSet = find(pairBracket, str, curFrom, to, node, context);
+                result.addAll(lastSet);
+            }
+        } catch (QueryContext.AbortedException e) {
+            // matches of finished branches and of the stopped one are matches of OR
+            if (result == null) {
+                result = e.getPartialMatches();
+            } else if (e.getPartialMatches() != null) {
+                result.addAll(e.getPartialMatches());
+            }
+            e.setPartialMatches(result);
+            throw e;
         }
         return result;
     }
 
     @Nullable
-    private Set<Occurance> findDist(int[] pairBracket, String str, int from, int to) {
-        Set<Occurance> result = null;
+    private Set<Occurance> findDist(int[] pairBracket, String str, int from, int to, QueryProfile node, QueryContext context) {
+        Set<Occurance> result = findAdjacentWords(str, from, to, context);
+        if (result != null) {
+            return result;
+        }
 
-        int curFrom = from;
-        int prevDif = 0;
-        boolean prevBothWays = false;
-        for (int i = from; i <= to; i++) {
-            if (i < to && str.charAt(i) == '(') {
-                i = pairBracket[i];
-            } else if (isContainSubstringAt(str, i, DIST_OPERATOR) || i >= to - 1) {
-                if (i >= to - 1) {
-                    i = to;
-                    if(result == null) {
-                        return null;
+        try {
+            int curFrom = from;
+            int prevDif = 0;
+            boolean prevBothWays = false;
+            for (int i = from; i <= to; i++) {
+                if (i < to && str.charAt(i) == '(') {
+                    i = pairBracket[i];
+                } else if (isContainSubstringAt(str, i, DIST_OPERATOR) || i >= to - 1) {
+                    if (i >= to - 1) {
+                        i = to;
+                        if(result == null) {
+                            return null;
+                        }
                     }
-                }
-                Set<Occurance> left = find(pairBracket, str, curFrom, i);
-                if (result == null) {
-                    result = left;
-                } else {
-                    Set<Occurance> newOc = new HashSet<>();
-                    for (Occurance inPrev : result) {
-                        for (Occurance inNew : left) {
-                            if (inNew.file.equals(inPrev.file) && (inNew.from == inPrev.to + prevDif || (prevBothWays && inNew.from == inPrev.to - prevDif))) {
-                                newOc.add(new Occurance(inPrev.file, Math.min(inPrev.from, inNew.from), Math.max(inPrev.to, inNew.to)));
+                    Set<Occurance> left = find(pairBracket, str, curFrom, i, node, context);
+                    if (result == null) {
+                        result = left;
+                    } else {
+                        Set<Occurance> newOc = new HashSet<>();
+                        for (Occurance inPrev : result) {
+                            for (Occurance inNew : left) {
+                                context.checkpoint();
+                                if (inNew.doc == inPrev.doc && (inNew.from == inPrev.to + prevDif || (prevBothWays && inNew.from == inPrev.to - prevDif))) {
+                                    context.addOccurrence();
+                                    newOc.add(new Occurance(inPrev.doc, Math.min(inPrev.from, inNew.from), Math.max(inPrev.to, inNew.to)));
+                                }
                             }
                         }
+                        result = newOc;
                     }
-                    result = newOc;
-                }
-                if (i != to) {
-                    int dif = parseIntFromPosition(str, i + DIST_OPERATOR.length());
-                    boolean bothWays = "0123456789".contains(str.charAt(i + DIST_OPERATOR.length()) + "");
-                    curFrom = i + DIST_OPERATOR.length();
-                    while (str.charAt(curFrom) != ' ') {
+                    if (i != to) {
+                        int dif = parseIntFromPosition(str, i + DIST_OPERATOR.length());
+                        boolean bothWays = "0123456789".contains(str.charAt(i + DIST_OPERATOR.length()) + "");
+                        curFrom = i + DIST_OPERATOR.length();
+                        while (str.charAt(curFrom) != ' ') {
+                            curFrom++;
+                        }
                         curFrom++;
+                        i = curFrom - 1;
+                        prevDif = dif;
+                        prevBothWays = bothWays;
                     }
-                    curFrom++;
-                    i = curFrom - 1;
-                    prevDif = dif;
-                    prevBothWays = bothWays;
                 }
             }
+        } catch (QueryContext.AbortedException e) {
+            // occurrences of operands are not matches of distance operator
+            e.setPartialMatches(null);
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Answers queries "X /1 Y", "X /+1 Y" and "X /-1 Y" with pair postings, if X and Y are frequent words.
+     *
+     * @return null, if query is not of this kind, or pair postings can't be used for it
+     */
+    @Nullable
+    private Set<Occurance> findAdjacentWords(String str, int from, int to, QueryContext context) {
+        int operator = str.indexOf(DIST_OPERATOR, from);
+        if (operator == -1 || operator >= to) {
+            return null;
+        }
+        int distFrom = operator + DIST_OPERATOR.length();
+        int distTo = str.indexOf(' ', distFrom);
+        if (distTo == -1 || distTo >= to || !isWord(str, from, operator) || !isWord(str, distTo + 1, to)) {
+            return null;
+        }
+        for (int i = distFrom; i < distTo; i++) {
+            if ("+-0123456789".indexOf(str.charAt(i)) == -1) {
+                return null;
+            }
+        }
+        int dif = parseIntFromPosition(str, distFrom);
+        boolean bothWays = "0123456789".indexOf(str.charAt(distFrom)) != -1;
+        if (dif != 1 && dif != -1) {
+            return null;
+        }
+        String left = str.substring(from, operator);
+        String right = str.substring(distTo + 1, to);
+
+        Map<Integer, int[]> forward = null;
+        Map<Integer, int[]> backward = null;
+        if (dif == 1 || bothWays) {
+            forward = index.getFollowedBy(left, right);
+            if (forward == null) {
+                return null;
+            }
+        }
+        if (dif == -1 || bothWays) {
+            backward = index.getFollowedBy(right, left);
+            if (backward == null) {
+                return null;
+            }
+        }
+        Metrics.global().counter(Metrics.withLabel("routed_queries_total", "route", "pair_postings")).increment();
+        Set<Occurance> result = new HashSet<>();
+        try {
+            if (forward != null) {
+                result.addAll(toOccurances(forward, 1, context));
+            }
+            if (backward != null) {
+                result.addAll(toOccurances(backward, 1, context));
+            }
+        } catch (QueryContext.AbortedException e) {
+            // pairs of words are matches of node already
+            result.addAll(e.getPartialMatches());
+            e.setPartialMatches(result);
+            throw e;
         }
         return result;
     }
@@ -261,13 +616,92 @@ public class Searcher {
         return true;
     }
 
-    private static class Occurance {
-        private String file;
+    /**
+     * Matches of query and status of its evaluation.
+     */
+    public static class SearchResult {
+        private final DocumentTable documents;
+        private final Set<Occurance> matches;
+        private final QueryContext.Status status;
+        private final long occurrencesCount;
+
+        public SearchResult(DocumentTable documents, Set<Occurance> matches, QueryContext.Status status, long occurrencesCount) {
+            this.documents = documents;
+            this.matches = matches;
+            this.status = status;
+            this.occurrencesCount = occurrencesCount;
+        }
+
+        public Set<Occurance> getMatches() {
+            return matches;
+        }
+
+        public QueryContext.Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return count of occurrences, produced by all nodes of query
+         */
+        public long getOccurrencesCount() {
+            return occurrencesCount;
+        }
+
+        public boolean isComplete() {
+            return status == QueryContext.Status.COMPLETE;
+        }
+
+        /**
+         * Appends matches in compact form: "file:from-to" (or "file:from" for one word), separated with spaces.
+         */
+        public void appendMatches(StringBuilder out) {
+            Map<Integer, String> paths = new HashMap<>();
+            boolean first = true;
+            for (Occurance occurance : matches) {
+                if (!first) {
+                    out.append(' ');
+                }
+                first = false;
+                out.append(getPath(occurance.doc, paths)).append(':').append(occurance.from);
+                if (occurance.to != occurance.from) {
+                    out.append('-').append(occurance.to);
+                }
+            }
+        }
+
+        private String getPath(int doc, Map<Integer, String> paths) {
+            String path = paths.get(doc);
+            if (path == null) {
+                path = documents.getPath(doc);
+                paths.put(doc, path);
+            }
+            return path;
+        }
+
+        @Override
+        public String toString() {
+            Map<Integer, String> paths = new HashMap<>();
+            StringBuilder res = new StringBuilder("[");
+            for (Occurance occurance : matches) {
+                if (res.length() > 1) {
+                    res.append(", ");
+                }
+                res.append("In file '").append(getPath(occurance.doc, paths)).append("' at word ").append(occurance.from);
+                if (occurance.to != occurance.from) {
+                    res.append(" to word ").append(occurance.to);
+                }
+            }
+            return res.append(']').toString();
+        }
+    }
+
+    static class Occurance {
+        private int doc;
         private int from;
         private int to;
 
-        public Occurance(String file, int from, int to) {
-            this.file = file;
+        public Occurance(int doc, int from, int to) {
+            this.doc = doc;
             this.from = from;
             this.to = to;
         }
@@ -281,7 +715,7 @@ public class Searcher {
 
             if (from != occurance.from) return false;
             if (to != occurance.to) return false;
-            if (file != null ? !file.equals(occurance.file) : occurance.file != null) return false;
+            if (doc != occurance.doc) return false;
 
             return true;
         }
@@ -290,13 +724,13 @@ public class Searcher {
         public int hashCode() {
             int result = from;
             result = 239 * result + to;
-            result = 239 * result + (file != null ? file.hashCode() : 0);
+            result = 239 * result + doc;
             return result;
         }
 
         @Override
         public String toString() {
-            return "In file '" + file + "' at word " + (from == to ? from : from + " to word " + to);
+            return "In document " + doc + " at word " + (from == to ? from : from + " to word " + to);
         }
     }
 